@@ -47,12 +47,23 @@ public class Agent implements Drawable {
    protected final static int RANDOMWALK = 2 ;
 
    public static int agentType = 0  ; // defines agent behavior
+   private static final TradingStrategy[] strategies = {new IdealStrategy(), new LogitStrategy(), new RandomWalkStrategy()}; // by agent type, shared by all agents of the type
+   public static double idealShare = 0;      // shares of the agent types in a mixed population, all 0 for agents of agentType only
+   public static double logitShare = 0;
+   public static double randomWalkShare = 0;
 
    protected boolean pos;
    protected double optimalDemand;
    protected double order ;
    protected double numberOfPosStocks;
    protected double numberOfNegStocks;
+   protected long cashUnits;          // fixed-point ledger, in micro-units
+   protected long wealthUnits;
+   protected long posStockUnits;
+   protected long negStockUnits;
+   private boolean shortOfCash;       // listed to be raised to MINCASH at the end of the period, see World.setMinimumCash
+   protected double[] outcomeStocks;  // holdings in the n-outcome market, one entry per outcome, or in the combinatorial market, one per pattern
+   protected int outcome;             // outcome or pattern traded by the last order in the n-outcome or combinatorial market
    protected double divisor ;
    protected LMSRStock stockLMSR;
    protected Specialist specialist;
@@ -61,6 +72,7 @@ public class Agent implements Drawable {
 
    protected double offset ;
    protected double forecast ;
+   protected TradingStrategy strategy = getStrategy(agentType);
 
    public Agent() {
    }
@@ -74,6 +86,75 @@ public class Agent implements Drawable {
       }
    }  // constructor
 
+   protected Agent openPosition(LMSRStock stock, Specialist specialist) { // position of this agent in another market, see Market
+      Agent position = new LMSRAgent(-1);
+      position.staticAgent = false;
+      position.ID = ID;
+      position.stockLMSR = stock;
+      position.specialist = specialist;
+      position.strategy = strategy;
+      return position;
+   }
+
+   static TradingStrategy getStrategy(int type) { // strategy of an agent type, null for an unknown type
+      if (type < IDEAL || type > RANDOMWALK) {
+         return null;
+      }
+      return strategies[type];
+   }
+
+   /**
+    * Agents of each type, in agent order: agent i is of type t if cohorts[t] lists it. The
+    * types take turns in proportion to their shares, so that agents trading in agent order
+    * do not let one type trade ahead of the others every period, while the forecasts of a
+    * type are still set in one batch, see TradingStrategy.getForecasts.
+    */
+   static int[][] getCohorts(int agents) {
+      int[][] cohorts = new int[RANDOMWALK+1][];
+      int[] sizes = new int[RANDOMWALK+1];
+      int[] credits = new int[RANDOMWALK+1];
+      double[] shares = {idealShare, logitShare, randomWalkShare};
+      double total = idealShare + logitShare + randomWalkShare;
+      double cumulative = 0;
+      int assigned = 0;
+      int next;
+      if (!(total > 0)) { // a population of agentType only, or of no type at all for an unknown one
+         shares = new double[] {0, 0, 0};
+         if (getStrategy(agentType) != null) {
+            shares[agentType] = 1;
+         }
+         total = 1;
+      }
+      for (int t = IDEAL; t <= RANDOMWALK; t++) {
+         cumulative += shares[t];
+         sizes[t] = (int)Math.round(agents*cumulative/total) - assigned;
+         assigned += sizes[t];
+         cohorts[t] = new int[sizes[t]];
+      }
+      if (assigned < agents) { // no type at all
+         return cohorts;
+      }
+      for (int t = IDEAL; t <= RANDOMWALK; t++) {
+         sizes[t] = 0;
+      }
+      for (int i = 0; i < agents; i++) { // smooth weighted round robin: every type earns its cohort size per agent, the richest one takes the agent for all of them
+         next = -1;
+         for (int t = IDEAL; t <= RANDOMWALK; t++) {
+            credits[t] += cohorts[t].length;
+            if (cohorts[t].length > 0 && (next < 0 || credits[t] > credits[next])) {
+               next = t;
+            }
+         }
+         credits[next] -= agents;
+         cohorts[next][sizes[next]++] = i;
+      }
+      return cohorts;
+   }
+
+   public void setStrategy(TradingStrategy strategy) {
+      this.strategy = strategy;
+   }
+
    public double getOrder() {
       return order;
    }
@@ -97,41 +178,293 @@ public class Agent implements Drawable {
    }
 
    public double getWealth() {
+      if (World.isWealthAggregated() && stockLMSR != null) { // periods and the payout no longer value every agent, see World.getAggregateWealth
+         updateWealth();
+      }
       return wealth;
    }
+   public long getWealthUnits() {
+      if (World.isWealthAggregated() && stockLMSR != null) {
+         updateWealth();
+      }
+      return wealthUnits;
+   }
+
+   private void updateWealth() {
+      if (World.settled) {
+         setPayout();
+      } else {
+         setWealth();
+      }
+   }
+
+   protected void addToTotals(double cashChange, double posChange, double negChange) { // books a change of the holdings in the totals of World
+      World.addHoldings(cashChange, posChange, negChange);
+      checkMinimumCash();
+   }
+
+   protected void addUnitsToTotals(long cashChange, long posChange, long negChange) {
+      World.addHoldingUnits(cashChange, posChange, negChange);
+      checkMinimumCash();
+   }
+
+   private void checkMinimumCash() {
+      if (cash < MINCASH && !shortOfCash && World.isWealthAggregated()) {
+         shortOfCash = true;
+         World.addShortOfCash(this);
+      }
+   }
 
    public void executeOrder() { // gets cost of order and adds stocks to current holdings of agents and of the system as a whole, as well as sets revenue and subtracts cash paid
      double costLMSR;
-     stockLMSR = World.LMSRStocks;
-     specialist = AsmModel.specialist;
-     costLMSR = specialist.getCostLMSR(order, pos);
+     double quantity = order;
+     if (specialist.isCollectingOrders()) { // call auction: the order is cleared with those of all other agents, see executeAuctionOrder
+        return;
+     }
+     if (specialist.getOrderBook(pos) != null) { // resting limit orders are matched first, the market maker takes the remainder
+        quantity -= specialist.matchOrder(this);
+     }
+     if (AsmModel.fixedPointLedger) {
+        executeOrderUnits(quantity);
+        return;
+     }
+     costLMSR = specialist.getCostLMSR(quantity, pos);
      if (pos) { // if agent will buy or sell positive stocks
-        stockLMSR.setQPosLMSR(order); // adds or subtracts to the total of positive stocks in the system
-        numberOfPosStocks += order; // adds or subtracts to total of positive stocks the agent holds
+        stockLMSR.setQPosLMSR(quantity); // adds or subtracts to the total of positive stocks in the system
+        numberOfPosStocks += quantity; // adds or subtracts to total of positive stocks the agent holds
 //        System.out.println("YesStocks: " + numberOfPosStocks);
         specialist.setSpecialistRevenue(costLMSR); // adds to Market Maker revenue
         cash -= costLMSR; // subtracts the cost of the order from the agent's cash
+        addToTotals(-costLMSR, quantity, 0);
      } else { // if agent will buy or sell negative stocks
-        stockLMSR.setQNegLMSR(order); // adds or subtracts to the total of positive stocks in the system
-        numberOfNegStocks += order; // adds or subtracts to total of positive stocks the agent holds
+        stockLMSR.setQNegLMSR(quantity); // adds or subtracts to the total of positive stocks in the system
+        numberOfNegStocks += quantity; // adds or subtracts to total of positive stocks the agent holds
 //        System.out.println("NoStocks: " + numberOfNegStocks);
         specialist.setSpecialistRevenue(costLMSR); // adds to Market Maker revenue
         cash -= costLMSR; // subtracts the cost of the order from the agent's cash
+        addToTotals(-costLMSR, 0, quantity);
      }
    }  // executeOrder()
 
+   protected void executeOrderUnits(double quantity) { // same as executeOrder, but books the trade in micro-units of the fixed-point ledger
+     long costUnits = specialist.getCostUnitsLMSR(quantity, pos);
+     long quantityUnits = Ledger.toUnits(quantity);
+     if (pos) {
+        stockLMSR.setQPosLMSR(quantity);
+        posStockUnits += quantityUnits;
+        numberOfPosStocks = Ledger.toDouble(posStockUnits);
+     } else {
+        stockLMSR.setQNegLMSR(quantity);
+        negStockUnits += quantityUnits;
+        numberOfNegStocks = Ledger.toDouble(negStockUnits);
+     }
+     specialist.setSpecialistRevenueUnits(costUnits);
+     cashUnits -= costUnits;
+     cash = Ledger.toDouble(cashUnits);
+     addUnitsToTotals(-costUnits, pos ? quantityUnits : 0, pos ? 0 : quantityUnits);
+   }  // executeOrderUnits()
+
+   protected void executeAuctionOrder(double fill, double price) { // books the stocks an order filled in a call auction at the given average price, the specialist has already added the net orders to the outstanding stocks
+     order = fill;
+     if (AsmModel.fixedPointLedger) {
+        long costUnits = specialist.getCostUnitsAuctionLMSR(order, price);
+        long orderUnits = Ledger.toUnits(order);
+        if (pos) {
+           posStockUnits += orderUnits;
+           numberOfPosStocks = Ledger.toDouble(posStockUnits);
+        } else {
+           negStockUnits += orderUnits;
+           numberOfNegStocks = Ledger.toDouble(negStockUnits);
+        }
+        specialist.setSpecialistRevenueUnits(costUnits);
+        cashUnits -= costUnits;
+        cash = Ledger.toDouble(cashUnits);
+        addUnitsToTotals(-costUnits, pos ? orderUnits : 0, pos ? 0 : orderUnits);
+     } else {
+        double cost = specialist.getCostAuctionLMSR(order, price);
+        if (pos) {
+           numberOfPosStocks += order;
+        } else {
+           numberOfNegStocks += order;
+        }
+        specialist.setSpecialistRevenue(cost);
+        cash -= cost;
+        addToTotals(-cost, pos ? order : 0, pos ? 0 : order);
+     }
+   }  // executeAuctionOrder()
+
+   protected void executeBookFill(boolean pos, double quantity, int tick) { // books stocks bought (or sold, if negative) from another agent at tick/OrderBook.TICKS each, the outstanding stocks of the market maker do not change
+     if (AsmModel.fixedPointLedger) {
+        long quantityUnits = Ledger.toUnits(quantity);
+        if (pos) {
+           posStockUnits += quantityUnits;
+           numberOfPosStocks = Ledger.toDouble(posStockUnits);
+        } else {
+           negStockUnits += quantityUnits;
+           numberOfNegStocks = Ledger.toDouble(negStockUnits);
+        }
+        long costUnits = Ledger.multiply(quantityUnits, tick*(Ledger.UNITS/OrderBook.TICKS)); // truncated towards zero, so buyer and seller book the same amount
+        cashUnits -= costUnits;
+        cash = Ledger.toDouble(cashUnits);
+        addUnitsToTotals(-costUnits, pos ? quantityUnits : 0, pos ? 0 : quantityUnits);
+     } else {
+        double cost = quantity*tick/OrderBook.TICKS;
+        if (pos) {
+           numberOfPosStocks += quantity;
+        } else {
+           numberOfNegStocks += quantity;
+        }
+        cash -= cost;
+        addToTotals(-cost, pos ? quantity : 0, pos ? 0 : quantity);
+     }
+   }  // executeBookFill()
+
+   protected double getHoldings(boolean pos) {
+      return pos ? numberOfPosStocks : numberOfNegStocks;
+   }
+
+   protected double getAffordableStocks(int tick) { // whole stocks the agent can still pay for at tick/OrderBook.TICKS each without its cash falling below MINCASH
+      return Math.max(0, Math.floor((cash - MINCASH)*OrderBook.TICKS/tick));
+   }
+
+   public void setQuotes(int index) { // posts limit orders quoteSpread ticks below and above the tick of the forecast, bids only for a stock the agent would buy and asks only for stocks it holds
+      int tick = (int) Math.floor(forecast*OrderBook.TICKS);
+      int tickOther = (int) Math.floor((1-forecast)*OrderBook.TICKS);
+      OrderBook yesBook = specialist.getOrderBook(true);
+      OrderBook noBook = specialist.getOrderBook(false);
+      if (numberOfNegStocks == 0) {
+         yesBook.addBid(index, tick - OrderBook.quoteSpread, OrderBook.quoteSize);
+      }
+      if (numberOfPosStocks > 0) {
+         yesBook.addAsk(index, tick + 1 + OrderBook.quoteSpread, Math.min(OrderBook.quoteSize, numberOfPosStocks));
+      }
+      if (numberOfPosStocks == 0) {
+         noBook.addBid(index, tickOther - OrderBook.quoteSpread, OrderBook.quoteSize);
+      }
+      if (numberOfNegStocks > 0) {
+         noBook.addAsk(index, tickOther + 1 + OrderBook.quoteSpread, Math.min(OrderBook.quoteSize, numberOfNegStocks));
+      }
+   }  // setQuotes()
+
+
+   protected void executeOutcomeOrder() { // executeOrder for the n-outcome and the combinatorial market
+     if (AsmModel.fixedPointLedger) {
+        long costUnits = specialist.getCostUnitsOutcomeLMSR(outcome, order);
+        specialist.setSpecialistRevenueUnits(costUnits);
+        cashUnits -= costUnits;
+        cash = Ledger.toDouble(cashUnits);
+     } else {
+        double cost = specialist.getCostOutcomeLMSR(outcome, order);
+        specialist.setSpecialistRevenue(cost); // adds to Market Maker revenue
+        cash -= cost;
+     }
+     if (World.combinatorialStock != null) {
+        World.combinatorialStock.addQuantity(outcome, order);
+     } else {
+        World.outcomeStock.addQuantity(outcome, order);
+     }
+     outcomeStocks[outcome] += order;
+   }  // executeOutcomeOrder()
 
    public void getEarningsAndPayTaxes() {
-     stockLMSR = World.LMSRStocks;
+     if (World.outcomeStock != null || World.combinatorialStock != null) {
+        getOutcomeEarnings();
+        return;
+     }
+     setMinimumCash();
+     setWealth();
+   } // receiveInterestAndDividend
+
+   protected void setMinimumCash() { // cash that fell below MINCASH in the period is raised to it
+     shortOfCash = false;
+     if (AsmModel.fixedPointLedger) {
+        if (cashUnits < Ledger.toUnits(MINCASH)) {
+           World.addHoldingUnits(Ledger.toUnits(MINCASH) - cashUnits, 0, 0);
+           cashUnits = Ledger.toUnits(MINCASH);
+           cash = Ledger.toDouble(cashUnits);
+        }
+        return;
+     }
      if (cash < MINCASH) {
+        World.addHoldings(MINCASH - cash, 0, 0);
         cash = MINCASH;
      }
+   }
+
+   protected void setWealth() { // values the holdings at the current prices
+     if (AsmModel.fixedPointLedger) {
+        wealthUnits = cashUnits + Ledger.multiply(posStockUnits, Ledger.toUnits(stockLMSR.getPrice())) + Ledger.multiply(negStockUnits, Ledger.toUnits(stockLMSR.getPriceNoStock()));
+        wealth = Ledger.toDouble(wealthUnits);
+        return;
+     }
      wealth = cash + numberOfPosStocks*stockLMSR.getPrice() + numberOfNegStocks*stockLMSR.getPriceNoStock();// update wealth
-   } // receiveInterestAndDividend
+   }
+
+   protected void getOutcomeEarnings() { // wealth in the n-outcome or combinatorial market, each holding is valued at the price of buying one more stock
+     if (AsmModel.fixedPointLedger) {
+        if (cashUnits < Ledger.toUnits(MINCASH)) {
+           cashUnits = Ledger.toUnits(MINCASH);
+           cash = Ledger.toDouble(cashUnits);
+        }
+        wealthUnits = cashUnits;
+        for (int i = 0; outcomeStocks != null && i < outcomeStocks.length; i++) {
+           if (outcomeStocks[i] != 0) {
+              wealthUnits += Ledger.multiply(Ledger.toUnits(outcomeStocks[i]), Ledger.toUnits(specialist.getLastPriceOutcomeLMSR(i, 1, true)));
+           }
+        }
+        wealth = Ledger.toDouble(wealthUnits);
+        return;
+     }
+     if (cash < MINCASH) {
+        cash = MINCASH;
+     }
+     wealth = cash;
+     for (int i = 0; outcomeStocks != null && i < outcomeStocks.length; i++) {
+        if (outcomeStocks[i] != 0) {
+           wealth += outcomeStocks[i]*specialist.getLastPriceOutcomeLMSR(i, 1, true);
+        }
+     }
+   }  // getOutcomeEarnings
 
    public void setPayout() {
-      stockLMSR = World.LMSRStocks;
-      specialist = AsmModel.specialist;
+      if (World.outcomeStock != null) { // each stock of the winning outcome pays one unit of cash
+         int winner = World.outcomeStock.getWinningOutcome();
+         double winning = outcomeStocks == null ? 0 : Math.max(0, outcomeStocks[winner]);
+         wealthUnits = cashUnits + Ledger.toUnits(winning);
+         if (AsmModel.fixedPointLedger) {
+            wealth = Ledger.toDouble(wealthUnits);
+         } else {
+            wealth = cash + winning;
+         }
+         return;
+      }
+      if (World.combinatorialStock != null) { // each stock of a pattern that holds pays one unit of cash
+         double winning = 0;
+         long winningUnits = 0;
+         for (int k = 0; outcomeStocks != null && k < outcomeStocks.length; k++) {
+            if (outcomeStocks[k] > 0 && World.combinatorialStock.getPatternPays(k)) {
+               winning += outcomeStocks[k];
+               winningUnits += Ledger.toUnits(outcomeStocks[k]);
+            }
+         }
+         wealthUnits = cashUnits + winningUnits;
+         if (AsmModel.fixedPointLedger) {
+            wealth = Ledger.toDouble(wealthUnits);
+         } else {
+            wealth = cash + winning;
+         }
+         return;
+      }
+      if (AsmModel.fixedPointLedger) { // each winning stock pays one unit of cash
+         wealthUnits = cashUnits;
+         if (stockLMSR.probability > 0.5 && posStockUnits > 0) {
+            wealthUnits += posStockUnits;
+         } else if (stockLMSR.probability <= 0.5 && negStockUnits > 0) {
+            wealthUnits += negStockUnits;
+         }
+         wealth = Ledger.toDouble(wealthUnits);
+         return;
+      }
       if (stockLMSR.probability > 0.5) { // if stock probability is over 0.5 at the last period, "Yes" stocks pay
          if (numberOfPosStocks > 0) {
             wealth = cash + numberOfPosStocks*1;
@@ -171,184 +504,240 @@ public class Agent implements Drawable {
    }
 
    public void setDemandAndSlope() {
+      drawNoise();
+      setDemand();
+   }
+
+   protected void drawNoise() { // the noise of the forecast, drawn apart from setDemand so that the draws keep the agent order when agents decide in parallel
+      offset = stockLMSR.nextNoise();
+   }
+
+   protected void setDemand() { // only reads the market unless an order is executed, see Specialist.CLEAR_SNAPSHOT
       order = 0;
-      stockLMSR = World.LMSRStocks;
-      specialist = AsmModel.specialist;
-      offset = AsmModel.LMSRNormal.nextDouble();
-      divisor = riskAversion*stockLMSR.getProbability()*(1-stockLMSR.getProbability());
+      divisor = stockLMSR.getRiskDivisor();
       double trialPrice;
-      switch (agentType) {
-         case IDEAL: // traders with perfect forecast, used as baseline
-//            BigDecimal bd = new BigDecimal(stockLMSR.getProbability()).setScale(6, BigDecimal.ROUND_DOWN);
-//            forecast = bd.doubleValue();
-            forecast = stockLMSR.getProbability();
-//            System.out.println("forecast: " + forecast);
-            trialPrice = specialist.getLastPriceLMSR(1, true, true);
-            if (forecast > trialPrice) { // if the agent thinks the probability is higher than the current price
-               if (numberOfNegStocks == 0) { // if agent has no "No" stocks
-                  pos = true; // agent will buy "Yes" stocks
-                  while (forecast > trialPrice) {
-                     order++;
-                     trialPrice = specialist.getLastPriceLMSR(order, pos, true);
-//                     System.out.println("trialPrice1: " + trialPrice);
-                  }
-                  executeOrder();
-//           System.out.println("orderPos: " + order);
-               } else { // agent will sell "No" stocks
-                  pos = false;
-                  trialPrice = -specialist.getLastPriceLMSR(1, pos, false); // evaluates price of "No" stock
-                  while (trialPrice > 1-forecast & -order < numberOfNegStocks) {
-                     order--;
-                     trialPrice = -specialist.getLastPriceLMSR(order, pos, false);
-//                     System.out.println("trialPrice2: " + trialPrice);
-                  }
-                  executeOrder();
-//           System.out.println("orderPos: " + order);
-               }
-            } else { // if the agent thinks the probability is lower than the current price
-               if (numberOfPosStocks == 0) { // if agent has no "Yes" stocks
-                  pos = false; // agent will buy "No" stocks
-                  trialPrice = specialist.getLastPriceLMSR(1, pos, true);
-                  while (1-forecast > trialPrice) {
-                     order++;
-                     trialPrice = specialist.getLastPriceLMSR(order, pos, true);
-//                     System.out.println("trialPrice3: " + trialPrice);
-                  }
-                  executeOrder();
-//           System.out.println("orderNeg: " + order);
-               } else { // agent will sell "Yes" stocks
-                  pos = true;
-                  trialPrice = -specialist.getLastPriceLMSR(0, pos, false); // evaluates price of "Yes" stock
-                  while (forecast < trialPrice & -order < numberOfPosStocks) {
-                     order--;
-                     trialPrice = -specialist.getLastPriceLMSR(order, pos, false);
-//                     System.out.println("trialPrice4: " + trialPrice);
-                  }
-                  executeOrder();
-//           System.out.println("orderNeg: " + order);
-               }
+      int idleSide;
+      if (strategy == null) { // no strategy for this agent type, the agent does not trade
+         return;
+      }
+      forecast = strategy.getForecast(stockLMSR, offset);
+//      System.out.println("forecast: " + forecast);
+      idleSide = specialist.getIdleSide(forecast, numberOfPosStocks, numberOfNegStocks, cash - MINCASH, strategy.isRiskAverse(), divisor);
+      if (idleSide != Specialist.ACTIVE) { // the order would be 0
+         pos = idleSide == 1;
+         return;
+      }
+      trialPrice = specialist.getLastPriceLMSR(1, true, true);
+      if (forecast > trialPrice) { // if the agent thinks the probability is higher than the current price
+         if (numberOfNegStocks == 0) { // if agent has no "No" stocks
+            pos = true; // agent will buy "Yes" stocks
+            if (strategy.isRiskAverse()) {
+               optimalDemand = (((forecast-(World.interestRatep1*trialPrice)))/(divisor) - numberOfPosStocks); // optimal CARA demand and Bernoulli standard deviation
+            } else {
+               optimalDemand = Double.POSITIVE_INFINITY;
             }
-            break; // end of IDEAL
-         case LOGIT: // logit specification for event prediction
-            double RHS;
-            double beta1 = stockLMSR.beta1;
-            double beta2 = stockLMSR.beta2;
-            double beta3 = stockLMSR.beta3;
-            RHS =  beta1*(World.period) + beta2*stockLMSR.pLagged1 + beta3*stockLMSR.pLagged2;;
-//            System.out.println("RHSAg: " + RHS);
-            forecast = Math.exp(RHS) / (1 + Math.exp(RHS));
-//            System.out.println("Forecast: " + forecast);
-            trialPrice = specialist.getLastPriceLMSR(1, true, true);
-            if (forecast > trialPrice) { // if the agent thinks the probability is higher than the current price
-               if (numberOfNegStocks == 0) { // if agent has no "No" stocks
-                  pos = true; // agent will buy "Yes" stocks
-                  optimalDemand = (((forecast-(World.interestRatep1*trialPrice)))/(divisor) - numberOfPosStocks); // optimal CARA demand and Bernoulli standard deviation
-                  while (forecast > trialPrice & order < optimalDemand) {
-                     order++;
-                     trialPrice = specialist.getLastPriceLMSR(order, pos, true);
-//                     System.out.println("trialPrice1: " + trialPrice);
-                  }
-                  executeOrder();
+            order = specialist.getBuyOrderLMSR(forecast, pos, optimalDemand); // buys until the last stock costs at least the forecast or demand is met
+            executeOrder();
 //           System.out.println("orderPos: " + order);
-               } else { // agent will sell "No" stocks
-                  pos = false;
-                  trialPrice = -specialist.getLastPriceLMSR(1, pos, false); // evaluates price of "No" stock
-                  while (trialPrice > 1-forecast & -order < numberOfNegStocks) {
-                     order--;
-                     trialPrice = -specialist.getLastPriceLMSR(order, pos, false);
-//                     System.out.println("trialPrice2: " + trialPrice);
-                  }
-                  executeOrder();
-//           System.out.println("orderPos: " + order);
-               }
-            } else { // if the agent thinks the probability is lower than the current price
-               if (numberOfPosStocks == 0) { // if agent has no "Yes" stocks
-                  pos = false; // agent will buy "No" stocks
-                  trialPrice = specialist.getLastPriceLMSR(1, pos, true);
-                  optimalDemand = ((((1-forecast)-(World.interestRatep1*trialPrice)))/(divisor) - numberOfNegStocks); // optimal CARA demand and Bernoulli standard deviation
-                  while (1-forecast > trialPrice & order < optimalDemand) {
-                     order++;
-                     trialPrice = specialist.getLastPriceLMSR(order, pos, true);
-//                     System.out.println("trialPrice3: " + trialPrice);
-                  }
-                  executeOrder();
-//           System.out.println("orderNeg: " + order);
-               } else { // agent will sell "Yes" stocks
-                  pos = true;
-                  trialPrice = -specialist.getLastPriceLMSR(0, pos, false); // evaluates price of "Yes" stock
-                  while (forecast < trialPrice & -order < numberOfPosStocks) {
-                     order--;
-                     trialPrice = -specialist.getLastPriceLMSR(order, pos, false);
-//                     System.out.println("trialPrice4: " + trialPrice);
-                  }
-                  executeOrder();
-//           System.out.println("orderNeg: " + order);
-               }
+         } else { // agent will sell "No" stocks
+            pos = false;
+            trialPrice = -specialist.getLastPriceLMSR(1, pos, false); // evaluates price of "No" stock
+            if (trialPrice > 1-forecast) { // sells "No" stocks while they are worth more than 1-forecast
+               order = specialist.getSellOrderLMSR(1-forecast, pos, numberOfNegStocks);
             }
-            constrainDemand(trialPrice);    // make sure that budget constraints are not violated
-            break; // end of LOGIT
-         case RANDOMWALK:
-            forecast = stockLMSR.getProbability() + offset; // gets the real probability and adds own perception
-            trialPrice = specialist.getLastPriceLMSR(1, true, true);
-            if (forecast > trialPrice) { // if the agent thinks the probability is higher than the current price
-               if (numberOfNegStocks == 0) { // if agent has no "No" stocks
-                  pos = true; // agent will buy "Yes" stocks
-                  optimalDemand = (((forecast-(World.interestRatep1*trialPrice)))/(divisor) - numberOfPosStocks); // optimal CARA demand and Bernoulli standard deviation
-                  while (forecast > trialPrice & order < optimalDemand) {
-                     order++;
-                     trialPrice = specialist.getLastPriceLMSR(order, pos, true);
-//                     System.out.println("trialPrice1: " + trialPrice);
-                  }
-                  executeOrder();
+            executeOrder();
 //           System.out.println("orderPos: " + order);
-               } else { // agent will sell "No" stocks
-                  pos = false;
-                  trialPrice = -specialist.getLastPriceLMSR(1, pos, false); // evaluates price of "No" stock
-                  while (trialPrice > 1-forecast & -order < numberOfNegStocks) {
-                     order--;
-                     trialPrice = -specialist.getLastPriceLMSR(order, pos, false);
-//                     System.out.println("trialPrice2: " + trialPrice);
-                  }
-                  executeOrder();
-//           System.out.println("orderPos: " + order);
-               }
-            } else { // if the agent thinks the probability is lower than the current price
-               if (numberOfPosStocks == 0) { // if agent has no "Yes" stocks
-                  pos = false; // agent will buy "No" stocks
-                  trialPrice = specialist.getLastPriceLMSR(1, pos, true);
-                  optimalDemand = ((((1-forecast)-(World.interestRatep1*trialPrice)))/(divisor) - numberOfNegStocks); // optimal CARA demand and Bernoulli standard deviation
-                  while (1-forecast > trialPrice & order < optimalDemand) {
-                     order++;
-                     trialPrice = specialist.getLastPriceLMSR(order, pos, true);
-//                     System.out.println("trialPrice3: " + trialPrice);
-                  }
-                  executeOrder();
+         }
+      } else { // if the agent thinks the probability is lower than the current price
+         if (numberOfPosStocks == 0) { // if agent has no "Yes" stocks
+            pos = false; // agent will buy "No" stocks
+            if (strategy.isRiskAverse()) {
+               trialPrice = specialist.getLastPriceLMSR(1, pos, true);
+               optimalDemand = ((((1-forecast)-(World.interestRatep1*trialPrice)))/(divisor) - numberOfNegStocks); // optimal CARA demand and Bernoulli standard deviation
+            } else {
+               optimalDemand = Double.POSITIVE_INFINITY;
+            }
+            order = specialist.getBuyOrderLMSR(1-forecast, pos, optimalDemand);
+            executeOrder();
 //           System.out.println("orderNeg: " + order);
-               } else { // agent will sell "Yes" stocks
-                  pos = true;
-                  trialPrice = -specialist.getLastPriceLMSR(0, pos, false); // evaluates price of "Yes" stock
-                  while (forecast < trialPrice & -order < numberOfPosStocks) {
-                     order--;
-                     trialPrice = -specialist.getLastPriceLMSR(order, pos, false);
-//                     System.out.println("trialPrice4: " + trialPrice);
-                  }
-                  executeOrder();
+         } else { // agent will sell "Yes" stocks
+            pos = true;
+            trialPrice = -specialist.getLastPriceLMSR(0, pos, false); // evaluates price of "Yes" stock
+            if (forecast < trialPrice) { // sells "Yes" stocks while they are worth more than the forecast
+               order = specialist.getSellOrderLMSR(forecast, pos, numberOfPosStocks);
+            }
+            executeOrder();
 //           System.out.println("orderNeg: " + order);
-               }
+         }
+      }
+      if (strategy.isRiskAverse()) {
+         constrainDemand(trialPrice);    // make sure that budget constraints are not violated
+      }
+   }	 // setDemand
+
+   protected void commitOrder() { // executes an order decided on the period start at the current quotes, unless they moved past the forecast since, cut to what the agent can still afford
+      double limit = pos ? forecast : 1-forecast;
+      if (order > 0 && !(specialist.getFirstPriceLMSR(pos, true) < limit)) {
+         order = 0;
+      } else if (order < 0 && !(specialist.getFirstPriceLMSR(pos, false) > limit)) {
+         order = 0;
+      }
+      if (order > 0) {
+         order = specialist.getAffordableOrderLMSR(order, pos, cash - MINCASH);
+      }
+      if (order == 0 && specialist.isFreeOrder(pos)) { // idle agents, see Specialist.getIdleSide
+         return;
+      }
+      executeOrder();
+   }  // commitOrder
+
+   public void setOutcomeDemand() { // n-outcome market: sells outcomes worth more than forecast, then buys the one furthest below it
+      MultiOutcomeStock outcomeStock = World.outcomeStock;
+      int outcomes = outcomeStock.getNumberOfOutcomes();
+      int best = -1;
+      double bestGap = 0;
+      double forecastFirst;
+      double forecastOther;
+      double outcomeForecast;
+      double trialPrice;
+      double probability;
+      double maxOrder;
+
+      offset = stockLMSR.nextNoise();
+      if (strategy == null) { // no strategy for this agent type, the agent does not trade
+         order = 0;
+         return;
+      }
+      if (outcomeStocks == null) {
+         outcomeStocks = new double[outcomes];
+      }
+      order = 0;
+      forecastFirst = getOutcomeForecast();
+      forecastOther = (1-forecastFirst)/(outcomes-1); // the other outcomes share the rest, as their probabilities do
+      for (int i = 0; i < outcomes; i++) { // every price probe is O(1), so a pass over all outcomes is O(n)
+         outcomeForecast = i == 0 ? forecastFirst : forecastOther;
+         if (outcomeStocks[i] > 0) {
+            trialPrice = -specialist.getLastPriceOutcomeLMSR(i, 0, false); // evaluates price of selling one stock
+            if (trialPrice > outcomeForecast) { // sells while the stocks are worth more than the forecast
+               outcome = i;
+               order = specialist.getSellOrderOutcomeLMSR(outcomeForecast, i, outcomeStocks[i]);
+               executeOutcomeOrder();
             }
-            constrainDemand(trialPrice);    // make sure that budget constraints are not violated
-            break; // end of RANDOMWALK
-         default:
-            break;
-      } // switch
+         }
+         trialPrice = specialist.getLastPriceOutcomeLMSR(i, 1, true);
+         if (outcomeForecast - trialPrice > bestGap) {
+            bestGap = outcomeForecast - trialPrice;
+            best = i;
+         }
+      }
+      if (best < 0) { // no outcome is priced below its forecast
+         return;
+      }
+      outcome = best;
+      outcomeForecast = best == 0 ? forecastFirst : forecastOther;
+      if (!strategy.isRiskAverse()) {
+         maxOrder = Double.POSITIVE_INFINITY;
+      } else {
+         probability = outcomeStock.getOutcomeProbability(best);
+         trialPrice = specialist.getLastPriceOutcomeLMSR(best, 1, true);
+         maxOrder = (outcomeForecast-(World.interestRatep1*trialPrice))/(riskAversion*probability*(1-probability)) - outcomeStocks[best]; // optimal CARA demand and Bernoulli standard deviation
+      }
+      order = specialist.getBuyOrderOutcomeLMSR(outcomeForecast, best, maxOrder);
+      order = specialist.getAffordableOrderOutcomeLMSR(order, best, cash - MINCASH); // make sure that budget constraints are not violated
+      executeOutcomeOrder();
+   }  // setOutcomeDemand
 
-   }	 // setDemandAndSlope
+   protected double getOutcomeForecast() { // forecast for outcome 0 of the n-outcome market, formed as the binary forecast of each agent type
+      return getEventForecast(stockLMSR);
+   }
+
+   protected double getEventForecast(LMSRStock event) { // forecast that an event happens, formed as the binary forecast of the agent's strategy
+      return strategy.getForecast(event, offset);
+   }
+
+   public void setPatternDemand() { // combinatorial market: sells patterns worth more than forecast, then buys an event or its conjunction with its pair
+      CombinatorialStock combinatorialStock = World.combinatorialStock;
+      int events = combinatorialStock.getNumberOfEvents();
+      int first = (ID + World.period) % events; // the events looked at rotate over agents and periods
+      int second = (first ^ 1) < events ? first ^ 1 : first - 1; // conjunctions stay within pairs of events, so components of linked events stay small
+      long value = 0;
+      int[] candidates = new int[2];
+      int best = -1;
+      double bestGap = 0;
+      double patternForecast;
+      double trialPrice;
+      double probability;
+      double maxOrder;
+
+      offset = stockLMSR.nextNoise();
+      if (strategy == null) { // no strategy for this agent type, the agent does not trade
+         order = 0;
+         return;
+      }
+      order = 0;
+      for (int k = 0; outcomeStocks != null && k < outcomeStocks.length; k++) {
+         if (outcomeStocks[k] > 0) {
+            patternForecast = getPatternForecast(k);
+            trialPrice = -specialist.getLastPriceOutcomeLMSR(k, 0, false); // evaluates price of selling one stock
+            if (trialPrice > patternForecast) { // sells while the stocks are worth more than the forecast
+               outcome = k;
+               order = specialist.getSellOrderOutcomeLMSR(patternForecast, k, outcomeStocks[k]);
+               executeOutcomeOrder();
+            }
+         }
+      }
+      if (getEventForecast(combinatorialStock.getEvent(first)) > 0.5) { // bets on the side of each event it finds more likely
+         value |= 1L << first;
+      }
+      if (getEventForecast(combinatorialStock.getEvent(second)) > 0.5) {
+         value |= 1L << second;
+      }
+      candidates[0] = combinatorialStock.getPattern(1L << first, value);
+      candidates[1] = combinatorialStock.getPattern((1L << first) | (1L << second), value);
+      for (int c = 0; c < candidates.length; c++) {
+         trialPrice = specialist.getLastPriceOutcomeLMSR(candidates[c], 1, true);
+         if (getPatternForecast(candidates[c]) - trialPrice > bestGap) {
+            bestGap = getPatternForecast(candidates[c]) - trialPrice;
+            best = candidates[c];
+         }
+      }
+      if (best < 0) { // no pattern is priced below its forecast
+         return;
+      }
+      if (outcomeStocks == null || outcomeStocks.length <= best) {
+         outcomeStocks = outcomeStocks == null ? new double[combinatorialStock.getNumberOfPatterns()] : Arrays.copyOf(outcomeStocks, combinatorialStock.getNumberOfPatterns());
+      }
+      outcome = best;
+      patternForecast = getPatternForecast(best);
+      if (!strategy.isRiskAverse()) {
+         maxOrder = Double.POSITIVE_INFINITY;
+      } else {
+         probability = combinatorialStock.getPatternProbability(best);
+         trialPrice = specialist.getLastPriceOutcomeLMSR(best, 1, true);
+         maxOrder = (patternForecast-(World.interestRatep1*trialPrice))/(riskAversion*probability*(1-probability)) - outcomeStocks[best]; // optimal CARA demand and Bernoulli standard deviation
+      }
+      order = specialist.getBuyOrderOutcomeLMSR(patternForecast, best, maxOrder);
+      order = specialist.getAffordableOrderOutcomeLMSR(order, best, cash - MINCASH); // make sure that budget constraints are not violated
+      executeOutcomeOrder();
+   }  // setPatternDemand
+
+   protected double getPatternForecast(int pattern) { // forecast that all events of a pattern go its way, the events being independent
+      CombinatorialStock combinatorialStock = World.combinatorialStock;
+      long care = combinatorialStock.getPatternCare(pattern);
+      long value = combinatorialStock.getPatternValue(pattern);
+      double patternForecast = 1;
+      double eventForecast;
+      for (int i = 0; i < combinatorialStock.getNumberOfEvents(); i++) {
+         if ((care & (1L << i)) != 0) {
+            eventForecast = getEventForecast(combinatorialStock.getEvent(i));
+            patternForecast *= (value & (1L << i)) != 0 ? eventForecast : 1-eventForecast;
+         }
+      }
+      return patternForecast;
+   }
 
    public void constrainDemand(double trialPrice) {
-     specialist = AsmModel.specialist;
-     while (specialist.getCostLMSR(order, pos) > (cash - MINCASH)) {
-        order--;
-     }
+     order = specialist.getAffordableOrderLMSR(order, pos, cash - MINCASH);
    }  // constrainDemand
 
    public double getDemand() {
@@ -0,0 +1,396 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+package ASMModel;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The agents of the binary market kept as columns, used instead of World.Agents when
+ * World.columnarAgents is on. Agent i is entry i of every column, so the loops over all
+ * agents run over a few primitive arrays instead of one object per agent. The trading,
+ * earnings and payout of an entry are those of Agent in World.LMSRStocks traded with
+ * AsmModel.specialist, and give the same results. The entries of each agent type form one
+ * cohort, see Agent.getCohorts, whose forecasts are set in one batch per period, or one
+ * entry at a time when the agents arrive in continuous time, see EventEngine. The
+ * call auction, the limit order book and further markets still need Agent objects, see
+ * isSupported. getView returns an Agent that reads an entry, for probing in the GUI.
+ */
+class AgentPopulation {
+
+   final int size;
+   final double[] cash;
+   final double[] wealth;
+   final double[] numberOfPosStocks;
+   final double[] numberOfNegStocks;
+   final double[] order;
+   final double[] forecast;
+   final double[] offset;
+   final boolean[] pos;
+   final long[] cashUnits;          // fixed-point ledger, in micro-units, null when it is off
+   final long[] wealthUnits;
+   final long[] posStockUnits;
+   final long[] negStockUnits;
+   private final int[][] cohorts;           // entries of agent type t, see Agent.getCohorts
+   private final byte[] types;              // agent type of each entry, -1 for none
+   private final boolean[] shortOfCash;     // entries to be raised to Agent.MINCASH at the end of the period, listed in shortEntries
+   private final int[] shortEntries;
+   private int numberShortOfCash = 0;
+   private final LMSRStock stockLMSR;
+
+   AgentPopulation(int size) {
+      double initialCash = new Agent().getInitialCash();
+      this.size = size;
+      stockLMSR = World.LMSRStocks;
+      cash = new double[size];
+      wealth = new double[size];
+      numberOfPosStocks = new double[size];
+      numberOfNegStocks = new double[size];
+      order = new double[size];
+      forecast = new double[size];
+      offset = new double[size];
+      pos = new boolean[size];
+      cohorts = Agent.getCohorts(size);
+      types = new byte[size];
+      Arrays.fill(types, (byte) -1);
+      for (int t = 0; t < cohorts.length; t++) {
+         for (int k = 0; k < cohorts[t].length; k++) {
+            types[cohorts[t][k]] = (byte) t;
+         }
+      }
+      shortOfCash = new boolean[size];
+      shortEntries = new int[size];
+      if (AsmModel.fixedPointLedger) {
+         cashUnits = new long[size];
+         wealthUnits = new long[size];
+         posStockUnits = new long[size];
+         negStockUnits = new long[size];
+      } else {
+         cashUnits = null;
+         wealthUnits = null;
+         posStockUnits = null;
+         negStockUnits = null;
+      }
+      for (int i = 0; i < size; i++) { // as the constructor of LMSRAgent
+         cash[i] = initialCash;
+         wealth[i] = cash[i] + numberOfPosStocks[i]*stockLMSR.getPrice() + numberOfNegStocks[i]*stockLMSR.getPriceNoStock();
+         if (cashUnits != null) {
+            cashUnits[i] = Ledger.toUnits(initialCash);
+            wealthUnits[i] = cashUnits[i];
+         }
+         World.setTotalWealth(World.getTotalWealth()+wealth[i]);
+      }
+   }
+
+   static boolean isSupported() { // settings under which the agents can be kept in columns
+      return World.outcomeStock == null && World.combinatorialStock == null && Market.numberOfMarkets < 2
+         && !AsmModel.limitOrderBook && Specialist.clearingMethod != Specialist.CLEAR_CALL_AUCTION;
+   }
+
+   public Agent getView(int i) {
+      return new View(this, i);
+   }
+
+   public double getWealth(int i) {
+      if (World.isWealthAggregated()) { // periods and the payout no longer value every entry, see World.getAggregateWealth
+         updateWealth(i);
+      }
+      return wealth[i];
+   }
+
+   private void updateWealth(int i) {
+      if (World.settled) {
+         setPayout(i);
+      } else {
+         setWealth(i);
+      }
+   }
+
+   public void setForecasts() { // draws the noise of all entries in agent order, then sets the forecasts cohort by cohort
+      TradingStrategy strategy;
+      for (int i = 0; i < size; i++) {
+         offset[i] = stockLMSR.nextNoise();
+      }
+      for (int t = 0; t < cohorts.length; t++) {
+         strategy = Agent.getStrategy(t);
+         strategy.getForecasts(stockLMSR, offset, forecast, cohorts[t]);
+      }
+   }
+
+   public void setForecast(int i) { // setForecasts for entry i alone, when it trades on its own
+      TradingStrategy strategy = getStrategy(i);
+      offset[i] = stockLMSR.nextNoise();
+      if (strategy != null) {
+         forecast[i] = strategy.getForecast(stockLMSR, offset[i]);
+      }
+   }
+
+   private TradingStrategy getStrategy(int i) {
+      return Agent.getStrategy(types[i]);
+   }
+
+   public void setDemand(int i, Specialist specialist) { // Agent.setDemand for entry i, with its forecast set by setForecasts
+      double divisor = stockLMSR.getRiskDivisor();
+      double trialPrice;
+      double optimalDemand;
+      TradingStrategy strategy = getStrategy(i);
+      boolean riskAverse;
+      int idleSide;
+
+      order[i] = 0;
+      if (strategy == null) {
+         return;
+      }
+      riskAverse = strategy.isRiskAverse();
+      idleSide = specialist.getIdleSide(forecast[i], numberOfPosStocks[i], numberOfNegStocks[i], cash[i] - Agent.MINCASH, riskAverse, divisor);
+      if (idleSide != Specialist.ACTIVE) {
+         pos[i] = idleSide == 1;
+         return;
+      }
+      trialPrice = specialist.getLastPriceLMSR(1, true, true);
+      if (forecast[i] > trialPrice) { // buys "Yes" stocks, or sells its "No" stocks first
+         if (numberOfNegStocks[i] == 0) {
+            pos[i] = true;
+            optimalDemand = riskAverse ? ((forecast[i]-(World.interestRatep1*trialPrice)))/(divisor) - numberOfPosStocks[i] : Double.POSITIVE_INFINITY;
+            order[i] = specialist.getBuyOrderLMSR(forecast[i], true, optimalDemand);
+         } else {
+            pos[i] = false;
+            trialPrice = -specialist.getLastPriceLMSR(1, false, false);
+            if (trialPrice > 1-forecast[i]) {
+               order[i] = specialist.getSellOrderLMSR(1-forecast[i], false, numberOfNegStocks[i]);
+            }
+         }
+      } else { // buys "No" stocks, or sells its "Yes" stocks first
+         if (numberOfPosStocks[i] == 0) {
+            pos[i] = false;
+            if (riskAverse) {
+               trialPrice = specialist.getLastPriceLMSR(1, false, true);
+               optimalDemand = ((((1-forecast[i])-(World.interestRatep1*trialPrice)))/(divisor) - numberOfNegStocks[i]);
+            } else {
+               optimalDemand = Double.POSITIVE_INFINITY;
+            }
+            order[i] = specialist.getBuyOrderLMSR(1-forecast[i], false, optimalDemand);
+         } else {
+            pos[i] = true;
+            trialPrice = -specialist.getLastPriceLMSR(0, true, false);
+            if (forecast[i] < trialPrice) {
+               order[i] = specialist.getSellOrderLMSR(forecast[i], true, numberOfPosStocks[i]);
+            }
+         }
+      }
+      executeOrder(i, specialist);
+      if (riskAverse) { // Agent.constrainDemand
+         order[i] = specialist.getAffordableOrderLMSR(order[i], pos[i], cash[i] - Agent.MINCASH);
+      }
+   }  // setDemand
+
+   public void commitOrder(int i, Specialist specialist) { // Agent.commitOrder for entry i
+      double limit = pos[i] ? forecast[i] : 1-forecast[i];
+      if (order[i] > 0 && !(specialist.getFirstPriceLMSR(pos[i], true) < limit)) {
+         order[i] = 0;
+      } else if (order[i] < 0 && !(specialist.getFirstPriceLMSR(pos[i], false) > limit)) {
+         order[i] = 0;
+      }
+      if (order[i] > 0) {
+         order[i] = specialist.getAffordableOrderLMSR(order[i], pos[i], cash[i] - Agent.MINCASH);
+      }
+      if (order[i] == 0 && specialist.isFreeOrder(pos[i])) {
+         return;
+      }
+      executeOrder(i, specialist);
+   }
+
+   private void executeOrder(int i, Specialist specialist) { // Agent.executeOrder for entry i
+      double cost;
+      long costUnits;
+      if (specialist.isCollectingOrders()) {
+         return;
+      }
+      if (cashUnits != null) {
+         costUnits = specialist.getCostUnitsLMSR(order[i], pos[i]);
+         if (pos[i]) {
+            stockLMSR.setQPosLMSR(order[i]);
+            posStockUnits[i] += Ledger.toUnits(order[i]);
+            numberOfPosStocks[i] = Ledger.toDouble(posStockUnits[i]);
+         } else {
+            stockLMSR.setQNegLMSR(order[i]);
+            negStockUnits[i] += Ledger.toUnits(order[i]);
+            numberOfNegStocks[i] = Ledger.toDouble(negStockUnits[i]);
+         }
+         specialist.setSpecialistRevenueUnits(costUnits);
+         cashUnits[i] -= costUnits;
+         cash[i] = Ledger.toDouble(cashUnits[i]);
+         World.addHoldingUnits(-costUnits, pos[i] ? Ledger.toUnits(order[i]) : 0, pos[i] ? 0 : Ledger.toUnits(order[i]));
+         checkMinimumCash(i);
+         return;
+      }
+      cost = specialist.getCostLMSR(order[i], pos[i]);
+      if (pos[i]) {
+         stockLMSR.setQPosLMSR(order[i]);
+         numberOfPosStocks[i] += order[i];
+      } else {
+         stockLMSR.setQNegLMSR(order[i]);
+         numberOfNegStocks[i] += order[i];
+      }
+      specialist.setSpecialistRevenue(cost);
+      cash[i] -= cost;
+      World.addHoldings(-cost, pos[i] ? order[i] : 0, pos[i] ? 0 : order[i]);
+      checkMinimumCash(i);
+   }
+
+   private void checkMinimumCash(int i) {
+      if (cash[i] < Agent.MINCASH && !shortOfCash[i] && World.isWealthAggregated()) {
+         shortOfCash[i] = true;
+         shortEntries[numberShortOfCash++] = i;
+      }
+   }
+
+   public void setMinimumCash() { // setMinimumCash of the entries whose cash fell below Agent.MINCASH in this period
+      for (int k = 0; k < numberShortOfCash; k++) {
+         setMinimumCash(shortEntries[k]);
+      }
+      numberShortOfCash = 0;
+   }
+
+   private void setMinimumCash(int i) { // Agent.setMinimumCash for entry i
+      shortOfCash[i] = false;
+      if (cashUnits != null) {
+         if (cashUnits[i] < Ledger.toUnits(Agent.MINCASH)) {
+            World.addHoldingUnits(Ledger.toUnits(Agent.MINCASH) - cashUnits[i], 0, 0);
+            cashUnits[i] = Ledger.toUnits(Agent.MINCASH);
+            cash[i] = Ledger.toDouble(cashUnits[i]);
+         }
+         return;
+      }
+      if (cash[i] < Agent.MINCASH) {
+         World.addHoldings(Agent.MINCASH - cash[i], 0, 0);
+         cash[i] = Agent.MINCASH;
+      }
+   }
+
+   private void setWealth(int i) { // Agent.setWealth for entry i
+      if (cashUnits != null) {
+         wealthUnits[i] = cashUnits[i] + Ledger.multiply(posStockUnits[i], Ledger.toUnits(stockLMSR.getPrice())) + Ledger.multiply(negStockUnits[i], Ledger.toUnits(stockLMSR.getPriceNoStock()));
+         wealth[i] = Ledger.toDouble(wealthUnits[i]);
+         return;
+      }
+      wealth[i] = cash[i] + numberOfPosStocks[i]*stockLMSR.getPrice() + numberOfNegStocks[i]*stockLMSR.getPriceNoStock();
+   }
+
+   public void setPayout(int i) { // Agent.setPayout for entry i, the winning stocks pay one unit of cash each
+      if (cashUnits != null) {
+         wealthUnits[i] = cashUnits[i];
+         if (stockLMSR.probability > 0.5 && posStockUnits[i] > 0) {
+            wealthUnits[i] += posStockUnits[i];
+         } else if (stockLMSR.probability <= 0.5 && negStockUnits[i] > 0) {
+            wealthUnits[i] += negStockUnits[i];
+         }
+         wealth[i] = Ledger.toDouble(wealthUnits[i]);
+         return;
+      }
+      if (stockLMSR.probability > 0.5) {
+         wealth[i] = numberOfPosStocks[i] > 0 ? cash[i] + numberOfPosStocks[i]*1 : cash[i];
+      } else {
+         wealth[i] = numberOfNegStocks[i] > 0 ? cash[i] + numberOfNegStocks[i]*1 : cash[i];
+      }
+   }
+
+   public long getWealthUnits(int i) {
+      if (cashUnits == null) {
+         return 0;
+      }
+      if (World.isWealthAggregated()) {
+         updateWealth(i);
+      }
+      return wealthUnits[i];
+   }
+
+   /**
+    * Decision phase of snapshot clearing, see Specialist.decideOnSnapshot: the forecasts
+    * are set, then the entries decide in parallel in blocks of Specialist.DECISION_BLOCK
+    * while the specialist collects their orders.
+    */
+   public void decide(Specialist specialist) {
+      setForecasts();
+      if (size > Specialist.DECISION_BLOCK) {
+         ForkJoinPool.commonPool().invoke(new Decisions(specialist, 0, size));
+      } else {
+         new Decisions(specialist, 0, size).compute();
+      }
+   }
+
+   private class Decisions extends RecursiveAction { // setDemand of entries from..to-1, splitting them in halves down to DECISION_BLOCK entries
+      private static final long serialVersionUID = 1L;
+      private final Specialist specialist;
+      private final int from;
+      private final int to;
+
+      Decisions(Specialist specialist, int from, int to) {
+         this.specialist = specialist;
+         this.from = from;
+         this.to = to;
+      }
+
+      protected void compute() {
+         OrderMailbox mailbox = specialist.getMailbox();
+         if (to-from <= Specialist.DECISION_BLOCK) {
+            for (int i = from; i < to; i++) {
+               setDemand(i, specialist);
+               if (mailbox != null) {
+                  mailbox.post(i);
+               }
+            }
+            return;
+         }
+         int middle = (from+to)/2;
+         invokeAll(new Decisions(specialist, from, middle), new Decisions(specialist, middle, to));
+      }
+   }
+
+   private static class View extends LMSRAgent { // reads one entry of the columns, for probing
+      private final AgentPopulation population;
+      private final int index;
+
+      View(AgentPopulation population, int index) {
+         super(-1);
+         this.population = population;
+         this.index = index;
+         staticAgent = false;
+         ID = index+1;
+      }
+
+      public double getOrder() {
+         return population.order[index];
+      }
+      public double getDemand() {
+         return population.order[index];
+      }
+      public double getCash() {
+         return population.cash[index];
+      }
+      public double getWealth() {
+         return population.getWealth(index);
+      }
+      public long getWealthUnits() {
+         return population.getWealthUnits(index);
+      }
+      public double getNumberOfPosStocks() {
+         return population.numberOfPosStocks[index];
+      }
+      public double getNumberOfNegStocks() {
+         return population.numberOfNegStocks[index];
+      }
+   }
+}
@@ -59,6 +59,8 @@ public class AsmModel extends SimModelImpl {
    protected static boolean recordData = false ;
    private static String recorderParamFile = "recorder.pf" ;
    protected static boolean LS_LMSR = false ;
+   protected static boolean fixedPointLedger = false ; // books cash, revenue, liabilities and holdings in micro-units
+   protected static boolean limitOrderBook = false ;   // agents quote limit orders that are matched ahead of the market maker, see OrderBook
    protected static OpenSequenceGraph priceGraph;
    protected static OpenSequenceGraph volumeGraph;
    protected static OpenSequenceGraph wealthGraph;
@@ -95,6 +97,28 @@ public class AsmModel extends SimModelImpl {
       ListPropertyDescriptor pd3 = new ListPropertyDescriptor("MarketMakerMethod", h3);
       descriptors.put("MarketMakerMethod", pd3);
 
+      Hashtable h5 = new Hashtable();
+      h5.put(new Integer(Specialist.SIZE_EXACT), "Exact");
+      h5.put(new Integer(Specialist.SIZE_ANALYTIC), "Analytic");
+      ListPropertyDescriptor pd5 = new ListPropertyDescriptor("OrderSizing", h5);
+      descriptors.put("OrderSizing", pd5);
+
+      Hashtable h6 = new Hashtable();
+      h6.put(new Integer(Specialist.RULE_LMSR), "Logarithmic");
+      h6.put(new Integer(Specialist.RULE_QUADRATIC), "Quadratic");
+      h6.put(new Integer(Specialist.RULE_CONSTANT_PRODUCT), "Constant Product");
+      ListPropertyDescriptor pd6 = new ListPropertyDescriptor("ScoringRule", h6);
+      descriptors.put("ScoringRule", pd6);
+
+      Hashtable h7 = new Hashtable();
+      h7.put(new Integer(Specialist.CLEAR_SEQUENTIAL), "Sequential");
+      h7.put(new Integer(Specialist.CLEAR_CALL_AUCTION), "Call Auction");
+      h7.put(new Integer(Specialist.CLEAR_SNAPSHOT), "Snapshot");
+      h7.put(new Integer(Specialist.CLEAR_CONTINUOUS), "Continuous");
+      h7.put(new Integer(Specialist.CLEAR_ASYNC), "Asynchronous");
+      ListPropertyDescriptor pd7 = new ListPropertyDescriptor("ClearingMethod", h7);
+      descriptors.put("ClearingMethod", pd7);
+
       Hashtable h4 = new Hashtable();
       h4.put(new Integer(Agent.IDEAL), "Ideal");
       h4.put(new Integer(Agent.LOGIT), "Logit");
@@ -131,8 +155,21 @@ public class AsmModel extends SimModelImpl {
 
       world = new World();
       World.LMSRStocks = stockLMSR;
+      if (MultiOutcomeStock.numberOfOutcomes > 2) {
+         World.outcomeStock = new MultiOutcomeStock(MultiOutcomeStock.numberOfOutcomes, (int)getRngSeed());
+      } else {
+         World.outcomeStock = null;
+      }
+      if (World.outcomeStock == null && CombinatorialStock.numberOfEvents > 1) {
+         World.combinatorialStock = new CombinatorialStock(CombinatorialStock.numberOfEvents, (int)getRngSeed());
+      } else {
+         World.combinatorialStock = null;
+      }
       specialist = new Specialist();
       World.createAgents();
+      World.createMarkets((int)getRngSeed());
+      World.createEventEngine((int)getRngSeed());
+      World.createMailboxes((int)getRngSeed());
       if (recordData) {	// writes data to an ascii-file
          recorder = new DataRecorder(recorderOptions.getRecorderOutputFile(), this, "Data Recording of LMSR-ASM" );
          recorder.setDelimiter(";"); // mudar?
@@ -317,7 +354,7 @@ public class AsmModel extends SimModelImpl {
                   x = Uniform.staticNextIntFromTo(0, World.numberOfAgents/3);
                   y = Uniform.staticNextIntFromTo(0, World.numberOfAgents/3);
                } while (agentWorld.getObjectAt(x, y) != null);
-               Agent agent = World.Agents[i];
+               Agent agent = World.getAgent(i);
                agent.setX(x);
                agent.setY(y);
                agentWorld.putObjectAt(x, y, agent);
@@ -430,9 +467,11 @@ public class AsmModel extends SimModelImpl {
                MMGraph.dispose();
             }
          }  // showDisplays
-         for (int i = 0 ; i < world.numberOfAgents ; i++) {
+         for (int i = 0 ; World.Agents != null && i < world.numberOfAgents ; i++) {
             World.Agents[i] = null;
          }
+         World.population = null;
+         World.eventEngine = null;
          specialist.setResetSpecialist();
          specialist = null;
          World.period=0;
@@ -472,14 +511,61 @@ public class AsmModel extends SimModelImpl {
       this.LS_LMSR = LS_LMSR;
    }
 
+   public boolean getFixedPointLedger() { return fixedPointLedger; }
+   public void setFixedPointLedger(boolean fixedPointLedger) {
+      this.fixedPointLedger = fixedPointLedger;
+   }
+
+   public boolean getLimitOrderBook() { return limitOrderBook; }
+   public void setLimitOrderBook(boolean limitOrderBook) {
+      this.limitOrderBook = limitOrderBook;
+   }
+   public double getQuoteSize() { return OrderBook.quoteSize; }
+   public void setQuoteSize(double val) { OrderBook.quoteSize = val; }
+   public int getQuoteSpread() { return OrderBook.quoteSpread; }
+   public void setQuoteSpread(int val) { OrderBook.quoteSpread = val; }
+
+   public boolean getColumnarAgents() { return World.columnarAgents; }
+   public void setColumnarAgents(boolean columnarAgents) {
+      World.columnarAgents = columnarAgents;
+   }
+
    public int getNumberOfPeriods() { return world.numberOfPeriods; }
    public void setNumberOfPeriods(int numberOfPeriods) { world.numberOfPeriods = numberOfPeriods;   }
    public double getInterestRate() { return World.interestRate; }
    public void setInterestRate(double interestRate) { World.interestRate = interestRate; }
    public void setMarketMakerMethod(int MMMethod) { Specialist.selectionMethod = MMMethod; }
    public int getMarketMakerMethod() { return Specialist.selectionMethod ; }
+   public void setOrderSizing(int sizingMethod) { Specialist.sizingMethod = sizingMethod; }
+   public int getOrderSizing() { return Specialist.sizingMethod ; }
+   public void setScoringRule(int rule) { Specialist.ruleMethod = rule; }
+   public int getScoringRule() { return Specialist.ruleMethod ; }
+   public int getNumberOfOutcomes() { return MultiOutcomeStock.numberOfOutcomes; }
+   public void setNumberOfOutcomes(int val) { MultiOutcomeStock.numberOfOutcomes = val; }
+   public int getNumberOfMarkets() { return Market.numberOfMarkets; }
+   public void setNumberOfMarkets(int val) { Market.numberOfMarkets = val; }
+   public int getNumberOfEvents() { return CombinatorialStock.numberOfEvents; }
+   public void setNumberOfEvents(int val) { CombinatorialStock.numberOfEvents = val; }
+   public void setClearingMethod(int method) { Specialist.clearingMethod = method; }
+   public int getClearingMethod() { return Specialist.clearingMethod ; }
+   public boolean getSparseActivation() { return Specialist.sparseActivation; }
+   public void setSparseActivation(boolean val) { Specialist.sparseActivation = val; }
+   public double getArrivalRate() { return EventEngine.arrivalRate; }
+   public void setArrivalRate(double val) { EventEngine.arrivalRate = val; }
+   public double getArrivalDispersion() { return EventEngine.arrivalDispersion; }
+   public void setArrivalDispersion(double val) { EventEngine.arrivalDispersion = val; }
+   public boolean getDeterministicReplay() { return OrderMailbox.deterministicReplay; }
+   public void setDeterministicReplay(boolean val) { OrderMailbox.deterministicReplay = val; }
+   public double getLatencyDispersion() { return OrderMailbox.latencyDispersion; }
+   public void setLatencyDispersion(double val) { OrderMailbox.latencyDispersion = val; }
    public void setAgentType(int agentType) { LMSRAgent.agentType = agentType; }
    public int getAgentType() { return LMSRAgent.agentType ; }
+   public double getIdealShare() { return Agent.idealShare; }
+   public void setIdealShare(double val) { Agent.idealShare = val; }
+   public double getLogitShare() { return Agent.logitShare; }
+   public void setLogitShare(double val) { Agent.logitShare = val; }
+   public double getRandomWalkShare() { return Agent.randomWalkShare; }
+   public void setRandomWalkShare(double val) { Agent.randomWalkShare = val; }
    public void setMemory(int memory) { Asset.setMemory(memory); }
    public int getMemory() { return Asset.getMemory() ; }
 
@@ -515,8 +601,8 @@ public class AsmModel extends SimModelImpl {
    public int getProbabilityProcess() { return LMSRStock.probabilityProcess; }
    public void setAlphaLS(double val) { LMSRStock.alphaLS = val; }
    public double getAlphaLS() { return LMSRStock.alphaLS ; }
-   public void setBLiq(double val) { LMSRStock.bLiq = val; }
-   public double getBLiq() { return LMSRStock.bLiq ; }
+   public void setBLiq(double val) { stockLMSR.setBLiq(val); }
+   public double getBLiq() { return stockLMSR.getBLiq() ; }
    public void setInitialPrice(double val) { LMSRStock.initialPrice = val;}
    public double getInitialPrice() {return LMSRStock.initialPrice ;}
    public double getInitialQuantity() { return LMSRStock.initialQuantity; }
@@ -525,8 +611,8 @@ public class AsmModel extends SimModelImpl {
    public double getPeriodShock() { return LMSRStock.periodShock ; }
    public void setProbAfterShock(double val) { LMSRStock.probAfterShock = val;}
    public double getProbAfterShock() {return LMSRStock.probAfterShock ;}
-   public double getProbability() { return LMSRStock.probability; }
-   public void setProbability(double val) { LMSRStock.probability = val; }
+   public double getProbability() { return stockLMSR.getProbability(); }
+   public void setProbability(double val) { stockLMSR.setProbability(val); }
    public void setRecorderParamFile(String val) {recorderParamFile = val; }
    public String getRecorderParamFile() { return recorderParamFile; }
    public void setRecorderOutputFile(String val) {recorderOptions.setRecorderOutputFile(val); }
@@ -534,17 +620,17 @@ public class AsmModel extends SimModelImpl {
 
    public String[] getInitParam() {
       if(this.getController().isBatch()) {
-         String[] params = {"numberOfLMSRAgents","numberOfPeriods","recordData","interestRate","memory",
+         String[] params = {"numberOfLMSRAgents","columnarAgents","numberOfPeriods","recordData","interestRate","memory",
          "showDisplays","riskAversion","recorderParamFile","recorderOutputFile",
-         "MarketMakerMethod","AgentType","reInitializeAt",
-         "LS_LMSR","alphaLS","bLiq","initialPrice","initialQuantity",
+         "MarketMakerMethod","OrderSizing","ScoringRule","ClearingMethod","sparseActivation","arrivalRate","arrivalDispersion","deterministicReplay","latencyDispersion","numberOfOutcomes","numberOfEvents","numberOfMarkets","AgentType","idealShare","logitShare","randomWalkShare","reInitializeAt",
+         "LS_LMSR","fixedPointLedger","limitOrderBook","quoteSize","quoteSpread","alphaLS","bLiq","initialPrice","initialQuantity",
          "periodShock","probAfterShock","probability", "probabilityProcess"
          };
          return params;
       } else {
          Controller.ALPHA_ORDER= false;   // show the variable not in alphabetical order but in the order as they are in the string array.
-         String[] params = {"LMSRAgent","numberOfLMSRAgents","MarketMakerMethod","AgentType",
-                 "numberOfPeriods","interestRate","memory","LS_LMSR",
+         String[] params = {"LMSRAgent","numberOfLMSRAgents","columnarAgents","MarketMakerMethod","OrderSizing","ScoringRule","ClearingMethod","sparseActivation","arrivalRate","arrivalDispersion","deterministicReplay","latencyDispersion","numberOfOutcomes","numberOfEvents","numberOfMarkets","AgentType","idealShare","logitShare","randomWalkShare",
+                 "numberOfPeriods","interestRate","memory","LS_LMSR","fixedPointLedger","limitOrderBook",
                  "stockLMSR","showDisplays","observer","recordData","recorderOptions","reInitializeAt"};
          return params;
       }
@@ -0,0 +1,360 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+
+package ASMModel;
+
+import java.util.Arrays;
+
+import cern.jet.random.Normal;
+import cern.jet.random.engine.MersenneTwister;
+
+/**
+ * A combinatorial market on numberOfEvents binary events. Its securities are patterns,
+ * conjunctions of events and negated events such as "A and not B", each paying one unit
+ * of cash if it holds. Prices follow the LMSR over the 2^n joint outcomes with a prior in
+ * which every event is independent with probability LMSRStock.initialPrice,
+ * C(q) = b*log(sum prior(w)*exp(q(w)/b)), where q(w) are the stocks sold of all patterns
+ * holding in outcome w.
+ *
+ * The joint outcomes are never enumerated. Events that were never traded together stay
+ * independent, so the weight factorizes into components of events linked by traded
+ * patterns. Each component is a sparse partition of its events into cells, partial
+ * assignments on which q is constant, and a trade only splits the cells that a pattern
+ * cuts. Pricing a pattern and booking a trade cost the number of cells of the components
+ * the pattern touches, which stays close to the number of patterns traded on them unless
+ * the patterns chain many events together. Buying x stocks of a pattern multiplies the
+ * weight of its outcomes by exp(x/b), so cost and inverses follow from its price alone,
+ * see LMSRCost.security*.
+ *
+ * Event 0 is World.LMSRStocks, the other events are further LMSRStocks, of which only
+ * the probability process is used. An event happens if its probability ends above 0.5.
+ */
+public class CombinatorialStock extends Asset {
+
+   public static int numberOfEvents = 0;  // more than one replace the binary market by a combinatorial market on that many events
+   protected static final int MAX_EVENTS = 64; // patterns are bit masks of a long
+
+   private int events;
+   private LMSRStock[] event;          // probability process of each event
+   private double[] prior;             // prior probability of each event
+   private Component[] componentOf;    // component each event belongs to
+   private long[] patternCare;         // events a pattern refers to
+   private long[] patternValue;        // whether each of them has to happen
+   private double[] patternQuantity;   // stocks of a pattern held by the agents
+   private double[] patternPrice;      // price of a pattern, valid while patternTrades equals trades
+   private double[] patternOther;      // 1-price, summed over the other outcomes to keep its precision near 1
+   private long[] patternTrades;
+   private int patterns = 0;
+   private long trades = 0;            // trades booked, a trade changes the prices of all patterns
+   private double stateBLiq = Double.NaN;
+
+   public CombinatorialStock(int events, int seed) {
+      this.events = Math.min(events, MAX_EVENTS);
+      event = new LMSRStock[this.events];
+      prior = new double[this.events];
+      componentOf = new Component[this.events];
+      event[0] = World.LMSRStocks;
+      for (int i = 0; i < this.events; i++) {
+         if (i > 0) { // the other events follow the same process with their own noise
+            event[i] = World.LMSRStocks.copyMarket(new Normal(0.0, 0.05, new MersenneTwister(seed+i)));
+         }
+         prior[i] = LMSRStock.initialPrice;
+         componentOf[i] = new Component(1L << i);
+      }
+      patternCare = new long[2*this.events];
+      patternValue = new long[2*this.events];
+      patternQuantity = new double[2*this.events];
+      patternPrice = new double[2*this.events];
+      patternOther = new double[2*this.events];
+      patternTrades = new long[2*this.events];
+   }
+
+   /**
+    * Events linked by traded patterns, with their cells. Cell c is the set of joint
+    * outcomes matching value[c] on the events in care[c], its weight is its prior
+    * probability times exp(q/b) of the stocks sold on it, kept relative to a shift.
+    */
+   private class Component {
+      private long members;        // events of this component
+      private long[] care;
+      private long[] value;
+      private double[] quantity;   // stocks sold of patterns holding on the cell
+      private double[] logPrior;   // log prior probability of the cell
+      private double[] weight;     // exp(logPrior + quantity/b - shift)
+      private int cells;
+      private double shift;
+      private double sumWeight;
+
+      Component(long members) {
+         this.members = members;
+         care = new long[4];
+         value = new long[4];
+         quantity = new double[4];
+         logPrior = new double[4];
+         weight = new double[4];
+         cells = 1; // a single cell with no conditions and prior probability 1
+         update();
+      }
+
+      private void addCell(long cellCare, long cellValue, double cellQuantity, double cellLogPrior) {
+         if (cells == care.length) {
+            care = Arrays.copyOf(care, 2*cells);
+            value = Arrays.copyOf(value, 2*cells);
+            quantity = Arrays.copyOf(quantity, 2*cells);
+            logPrior = Arrays.copyOf(logPrior, 2*cells);
+            weight = Arrays.copyOf(weight, 2*cells);
+         }
+         care[cells] = cellCare;
+         value[cells] = cellValue;
+         quantity[cells] = cellQuantity;
+         logPrior[cells] = cellLogPrior;
+         cells++;
+      }
+
+      private void update() { // recomputes the weights after a trade or a change of bLiq, O(cells)
+         double b = World.LMSRStocks.getBLiq();
+         shift = Double.NEGATIVE_INFINITY;
+         for (int c = 0; c < cells; c++) {
+            shift = Math.max(shift, logPrior[c] + quantity[c]/b);
+         }
+         sumWeight = 0;
+         for (int c = 0; c < cells; c++) {
+            weight[c] = Math.exp(logPrior[c] + quantity[c]/b - shift);
+            sumWeight += weight[c];
+         }
+      }
+
+      private double price(long patternCare, long patternValue, boolean matching) { // weight of the outcomes matching (or not matching) the pattern on this component's events, relative to all
+         double sum = 0;
+         double conditional;
+         for (int c = 0; c < cells; c++) {
+            if (((care[c] & patternCare) & (value[c] ^ patternValue)) == 0) { // the cell does not contradict the pattern
+               conditional = conditionalPrior(patternCare & ~care[c], patternValue);
+               sum += weight[c]*(matching ? conditional : 1-conditional);
+            } else if (!matching) {
+               sum += weight[c];
+            }
+         }
+         return sum/sumWeight;
+      }
+
+      private void merge(Component other) { // takes over the events of other, its cells are the products of both partitions
+         int ownCells = cells;
+         long[] ownCare = Arrays.copyOf(care, ownCells);
+         long[] ownValue = Arrays.copyOf(value, ownCells);
+         double[] ownQuantity = Arrays.copyOf(quantity, ownCells);
+         double[] ownLogPrior = Arrays.copyOf(logPrior, ownCells);
+         cells = 0;
+         for (int c = 0; c < ownCells; c++) {
+            for (int d = 0; d < other.cells; d++) {
+               addCell(ownCare[c] | other.care[d], ownValue[c] | other.value[d], ownQuantity[c] + other.quantity[d], ownLogPrior[c] + other.logPrior[d]);
+            }
+         }
+         members |= other.members;
+         for (int i = 0; i < events; i++) {
+            if (componentOf[i] == other) {
+               componentOf[i] = this;
+            }
+         }
+      }
+
+      private void trade(long patternCare, long patternValue, double order) { // splits the cells the pattern cuts and adds order to those inside it
+         long missing;
+         long bit;
+         int ownCells = cells;
+         for (int c = 0; c < ownCells; c++) {
+            if (((care[c] & patternCare) & (value[c] ^ patternValue)) != 0) { // outside the pattern
+               continue;
+            }
+            missing = patternCare & ~care[c];
+            while (missing != 0) { // the part of the cell where an event of the pattern goes the other way becomes a cell of its own
+               bit = Long.lowestOneBit(missing);
+               addCell(care[c] | bit, value[c] | (~patternValue & bit), quantity[c], logPrior[c] + logPrior(bit, ~patternValue));
+               care[c] |= bit;
+               value[c] |= patternValue & bit;
+               logPrior[c] += logPrior(bit, patternValue);
+               missing &= ~bit;
+            }
+            quantity[c] += order;
+         }
+         update();
+      }
+   }
+
+   private double conditionalPrior(long care, long value) { // prior probability that the events in care match value
+      double probability = 1;
+      long bit;
+      while (care != 0) {
+         bit = Long.lowestOneBit(care);
+         probability *= (value & bit) != 0 ? prior[Long.numberOfTrailingZeros(bit)] : 1-prior[Long.numberOfTrailingZeros(bit)];
+         care &= ~bit;
+      }
+      return probability;
+   }
+
+   private double logPrior(long bit, long value) {
+      return Math.log(conditionalPrior(bit, value));
+   }
+
+   private void checkState() { // bLiq belongs to World.LMSRStocks and may be set from the GUI without passing through this object
+      if (stateBLiq != World.LMSRStocks.getBLiq()) {
+         for (int i = 0; i < events; i++) {
+            if (Long.numberOfTrailingZeros(componentOf[i].members) == i) { // every component once, at its first event
+               componentOf[i].update();
+            }
+         }
+         stateBLiq = World.LMSRStocks.getBLiq();
+         trades++;
+      }
+   }
+
+   /** Index of the pattern requiring the events in care to match the bits of value, registered if it is new. */
+   public int getPattern(long care, long value) {
+      value &= care;
+      for (int k = 0; k < patterns; k++) { // patterns are few next to the cells they create, a scan is enough
+         if (patternCare[k] == care && patternValue[k] == value) {
+            return k;
+         }
+      }
+      if (patterns == patternCare.length) {
+         patternCare = Arrays.copyOf(patternCare, 2*patterns);
+         patternValue = Arrays.copyOf(patternValue, 2*patterns);
+         patternQuantity = Arrays.copyOf(patternQuantity, 2*patterns);
+         patternPrice = Arrays.copyOf(patternPrice, 2*patterns);
+         patternOther = Arrays.copyOf(patternOther, 2*patterns);
+         patternTrades = Arrays.copyOf(patternTrades, 2*patterns);
+      }
+      patternCare[patterns] = care;
+      patternValue[patterns] = value;
+      patternTrades[patterns] = -1;
+      return patterns++;
+   }
+
+   public int getNumberOfEvents() {
+      return events;
+   }
+   public int getNumberOfPatterns() {
+      return patterns;
+   }
+   public double getPatternQuantity(int pattern) {
+      return patternQuantity[pattern];
+   }
+   public long getPatternCare(int pattern) {
+      return patternCare[pattern];
+   }
+   public long getPatternValue(int pattern) {
+      return patternValue[pattern];
+   }
+   public LMSRStock getEvent(int i) {
+      return event[i];
+   }
+
+   public double getPatternProbability(int pattern) { // probability that the pattern holds, the events being independent
+      double probability = 1;
+      for (int i = 0; i < events; i++) {
+         if ((patternCare[pattern] & (1L << i)) != 0) {
+            probability *= (patternValue[pattern] & (1L << i)) != 0 ? getEventProbability(i) : 1-getEventProbability(i);
+         }
+      }
+      return probability;
+   }
+
+   public double getMarginalPrice(int pattern) { // instantaneous price
+      checkPrice(pattern);
+      return patternPrice[pattern];
+   }
+
+   private double getOtherPrice(int pattern) {
+      checkPrice(pattern);
+      return patternOther[pattern];
+   }
+
+   private void checkPrice(int pattern) { // the price is the product of the pattern's prices on the independent components it touches
+      long care;
+      long rest;
+      double price = 1;
+      double logOther = 0;
+      Component component;
+      checkState();
+      if (patternTrades[pattern] == trades) {
+         return;
+      }
+      care = patternCare[pattern];
+      rest = care;
+      while (rest != 0) {
+         component = componentOf[Long.numberOfTrailingZeros(rest)];
+         price *= component.price(care & component.members, patternValue[pattern], true);
+         logOther += Math.log1p(-component.price(care & component.members, patternValue[pattern], false)); // log of the price on the component
+         rest &= ~component.members;
+      }
+      patternPrice[pattern] = price;
+      patternOther[pattern] = -Math.expm1(logOther);
+      patternTrades[pattern] = trades;
+   }
+
+   protected double orderCost(int pattern, double order) { // cost of buying (or selling, if negative) order stocks of a pattern
+      return LMSRCost.securityCost(getMarginalPrice(pattern), getOtherPrice(pattern), stateBLiq, order);
+   }
+
+   protected double quantityForPrice(int pattern, double targetPrice) { // order whose last stock costs exactly targetPrice, before any rounding
+      return LMSRCost.securityQuantityForPrice(getMarginalPrice(pattern), getOtherPrice(pattern), stateBLiq, targetPrice);
+   }
+
+   protected double quantityForCost(int pattern, double cost) { // order that costs exactly cost, before any rounding
+      return LMSRCost.securityQuantityForCost(getMarginalPrice(pattern), getOtherPrice(pattern), stateBLiq, cost);
+   }
+
+   protected void addQuantity(int pattern, double order) { // books an order of the market maker, merging the components the pattern links
+      long care = patternCare[pattern];
+      long rest;
+      Component component;
+      checkState();
+      component = componentOf[Long.numberOfTrailingZeros(care)];
+      rest = care & ~component.members;
+      while (rest != 0) {
+         component.merge(componentOf[Long.numberOfTrailingZeros(rest)]);
+         rest &= ~component.members;
+      }
+      component.trade(care, patternValue[pattern], order);
+      patternQuantity[pattern] += order;
+      trades++;
+   }
+
+   public double getEventProbability(int i) {
+      return event[i].getProbability();
+   }
+
+   protected void updateProbabilities() { // event 0 is updated as World.LMSRStocks
+      for (int i = 1; i < events; i++) {
+         event[i].updateProbability();
+      }
+   }
+
+   public boolean getPatternPays(int pattern) { // whether all events of the pattern went its way
+      for (int i = 0; i < events; i++) {
+         if ((patternCare[pattern] & (1L << i)) != 0 && (getEventProbability(i) > 0.5) != ((patternValue[pattern] & (1L << i)) != 0)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   public void setResetPatterns() {
+      for (int i = 0; i < events; i++) {
+         componentOf[i] = new Component(1L << i);
+      }
+      patterns = 0;
+      trades++;
+   }
+}
@@ -0,0 +1,77 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+package ASMModel;
+
+/**
+ * Constant product market maker with liquidity L taken from LMSRStock.getBLiq(). The
+ * market maker holds L+C-qPos "Yes" and L+C-qNeg "No" stocks, where C is the cash it has
+ * taken in, and keeps their product at L^2. Solving the invariant for C gives
+ * C = (qPos+qNeg)/2 - L + sqrt((qPos-qNeg)^2+4L^2)/2, whose price 1/2+d/(2*sqrt(d^2+4L^2))
+ * and both inverses have closed forms in the difference d of the quantities.
+ */
+class ConstantProductRule extends MarketScoringRule {
+
+   public ConstantProductRule() {
+   }
+
+   private static double reserve(double d, double L) { // (d+sqrt(d^2+4L^2))/2, the market maker's reserve of the other stock
+      double root = Math.sqrt(d*d + 4*L*L);
+      if (d < 0) {
+         return 2*L*L/(root - d); // avoids cancelling d against the root
+      }
+      return (d + root)/2;
+   }
+
+   public double costDifference(LMSRStock stock, double qPos, double qNeg, double qPosPost, double qNegPost) {
+      double L = stock.getBLiq();
+      double d = qPos - qNeg;
+      double dPost = qPosPost - qNegPost;
+      double rootDifference = (dPost-d)*(dPost+d)/(Math.sqrt(dPost*dPost + 4*L*L) + Math.sqrt(d*d + 4*L*L));
+      return (qNegPost - qNeg) + ((dPost-d) + rootDifference)/2;
+   }
+
+   public double price(LMSRStock stock, double qPos, double qNeg, boolean pos) {
+      double L = stock.getBLiq();
+      double d = pos ? qPos-qNeg : qNeg-qPos;
+      return 0.5 + d/(2*Math.sqrt(d*d + 4*L*L));
+   }
+
+   public double quantityForPrice(LMSRStock stock, double targetPrice, boolean pos) {
+      double L = stock.getBLiq();
+      double d = pos ? stock.getQPosLMSR()-stock.getQNegLMSR() : stock.getQNegLMSR()-stock.getQPosLMSR();
+      double s = 2*targetPrice - 1;
+      double u;
+
+      if (!(targetPrice > 0)) { // prices never fall to 0 or rise to 1, so these targets are unreachable
+         return Double.NEGATIVE_INFINITY;
+      }
+      if (!(targetPrice < 1)) {
+         return Double.POSITIVE_INFINITY;
+      }
+      // the last stock costs (1 + sqrt(x^2+4L^2) - sqrt((x-1)^2+4L^2))/2, solved for u = 2x-1
+      u = s*Math.sqrt((1 + 16*L*L - s*s)/(4*targetPrice*(1-targetPrice))); // 4*t*(1-t) = 1-s^2
+      return (u+1)/2 - d;
+   }
+
+   public double quantityForCost(LMSRStock stock, double cost, boolean pos) {
+      double L = stock.getBLiq();
+      double d = pos ? stock.getQPosLMSR()-stock.getQNegLMSR() : stock.getQNegLMSR()-stock.getQPosLMSR();
+      double target = reserve(d, L) + cost; // reserve of the other stock after the order
+
+      if (!(target > 0)) { // selling every stock cannot bring in more than the reserve of the other stock
+         return Double.NEGATIVE_INFINITY;
+      }
+      return (target - L*L/target) - d;
+   }
+}
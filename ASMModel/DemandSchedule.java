@@ -0,0 +1,170 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+
+package ASMModel;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Aggregate demand schedule of the "Yes" or the "No" stock in a call auction. Every order
+ * is a limit price and a number of stocks: a buyer takes its stocks while the marginal
+ * price of the stock is below its limit, a seller gives them while the price is above it,
+ * and at its limit either takes any part of them. The net demand at a price is therefore
+ * an interval between getLowDemand and getHighDemand, which narrows to a point between the
+ * limits. The orders are sorted by their limits once, so both bounds take two binary
+ * searches. Owners are indices into the traders of the period, as in OrderBook.
+ */
+class DemandSchedule {
+
+   private double[] limit = new double[64];      // limit price of every order, in the order they were added
+   private double[] stocks = new double[64];     // stocks of every order, negative if they are sold
+   private int[] owner = new int[64];
+   private int orders;
+   private double[] buyLimits = new double[64];  // limits of the buy orders, ascending
+   private double[] buysAbove = new double[65];  // stocks of the buy orders from this limit on
+   private int buys;
+   private double[] sellLimits = new double[64]; // limits of the sell orders, ascending
+   private double[] sellsBelow = new double[65]; // stocks of the sell orders before this limit
+   private int sells;
+
+   public void reset() { // drops every order
+      orders = 0;
+      buys = 0;
+      sells = 0;
+   }
+
+   public void add(int trader, double limitPrice, double order) { // order is negative for a sell order
+      if (orders == limit.length) {
+         limit = Arrays.copyOf(limit, 2*orders);
+         stocks = Arrays.copyOf(stocks, 2*orders);
+         owner = Arrays.copyOf(owner, 2*orders);
+      }
+      limit[orders] = limitPrice;
+      stocks[orders] = order;
+      owner[orders] = trader;
+      orders++;
+   }
+
+   public void sort() { // called once all orders are added, before any demand is asked for
+      Integer[] byLimit = new Integer[orders];
+      int k;
+
+      if (buyLimits.length < orders) {
+         buyLimits = new double[orders];
+         buysAbove = new double[orders+1];
+         sellLimits = new double[orders];
+         sellsBelow = new double[orders+1];
+      }
+      for (k = 0; k < orders; k++) {
+         byLimit[k] = k;
+      }
+      Arrays.sort(byLimit, new Comparator<Integer>() {
+         public int compare(Integer a, Integer b) {
+            return Double.compare(limit[a], limit[b]);
+         }
+      });
+      buys = 0;
+      sells = 0;
+      sellsBelow[0] = 0;
+      for (k = 0; k < orders; k++) {
+         if (stocks[byLimit[k]] > 0) {
+            buyLimits[buys] = limit[byLimit[k]];
+            buysAbove[buys++] = stocks[byLimit[k]]; // summed from the top below
+         } else {
+            sellLimits[sells] = limit[byLimit[k]];
+            sellsBelow[sells+1] = sellsBelow[sells] - stocks[byLimit[k]];
+            sells++;
+         }
+      }
+      buysAbove[buys] = 0;
+      for (k = buys-1; k >= 0; k--) {
+         buysAbove[k] += buysAbove[k+1];
+      }
+   }
+
+   public double getBuyStocks() { // stocks of all buy orders
+      return buysAbove[0];
+   }
+
+   public double getSellStocks() { // stocks of all sell orders
+      return sellsBelow[sells];
+   }
+
+   public double getLowDemand(double price) { // net demand if the buyers at price buy nothing and the sellers there sell everything
+      return buysAbove[firstLimit(buyLimits, buys, price, false)] - sellsBelow[firstLimit(sellLimits, sells, price, false)];
+   }
+
+   public double getHighDemand(double price) { // net demand if the buyers at price buy everything and the sellers there sell nothing
+      return buysAbove[firstLimit(buyLimits, buys, price, true)] - sellsBelow[firstLimit(sellLimits, sells, price, true)];
+   }
+
+   private static int firstLimit(double[] limits, int n, double price, boolean atPrice) { // first limit above price, or the first at it if atPrice is set
+      int lo = 0;
+      int hi = n;
+      int middle;
+      while (lo < hi) {
+         middle = (lo+hi) >>> 1;
+         if (limits[middle] > price || (atPrice && limits[middle] == price)) {
+            hi = middle;
+         } else {
+            lo = middle+1;
+         }
+      }
+      return lo;
+   }
+
+   /**
+    * Fills the orders at a net order between the net demands at priceLow and priceHigh, the
+    * marginal prices at the ends of the bracket the auction found. Orders with a limit beyond
+    * the bracket fill completely or not at all. Those with a limit inside it are the marginal
+    * ones, and their buy and sell orders fill pro rata to the stocks they leave to reach
+    * netOrder, crossing each other as far as they can. fills receives the stocks of every
+    * owner, negative if sold, and the net order actually filled is returned.
+    */
+   public double fill(double netOrder, double priceLow, double priceHigh, double[] fills) {
+      double full = 0;       // net stocks of the orders that fill completely
+      double marginalBuys = 0;
+      double marginalSells = 0;
+      double rest;
+      double buyFill;
+      double sellFill;
+      int k;
+
+      for (k = 0; k < orders; k++) {
+         if (limit[k] < priceLow || limit[k] > priceHigh) {
+            if ((stocks[k] > 0) == (limit[k] > priceHigh)) {
+               full += stocks[k];
+            }
+         } else if (stocks[k] > 0) {
+            marginalBuys += stocks[k];
+         } else {
+            marginalSells -= stocks[k];
+         }
+      }
+      rest = Math.max(-marginalSells, Math.min(marginalBuys, netOrder - full));
+      buyFill = Math.min(marginalBuys, marginalSells + rest);
+      sellFill = buyFill - rest;
+      for (k = 0; k < orders; k++) {
+         if (limit[k] < priceLow || limit[k] > priceHigh) {
+            fills[owner[k]] = (stocks[k] > 0) == (limit[k] > priceHigh) ? stocks[k] : 0;
+         } else if (stocks[k] > 0) {
+            fills[owner[k]] = stocks[k]*(buyFill/marginalBuys);
+         } else {
+            fills[owner[k]] = stocks[k]*(sellFill/marginalSells);
+         }
+      }
+      return full + buyFill - sellFill;
+   }
+}
@@ -0,0 +1,96 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+
+package ASMModel;
+
+import cern.jet.random.Exponential;
+import cern.jet.random.Uniform;
+import cern.jet.random.engine.MersenneTwister;
+
+/**
+ * The continuous-time market of Specialist.CLEAR_CONTINUOUS. Instead of all agents trading
+ * once per period in agent order, each agent arrives at the market at the times of its own
+ * Poisson process and trades against the market maker at the outstanding stocks it finds.
+ * The intensities, i.e., the mean arrivals of an agent per period, are spread uniformly
+ * around arrivalRate by arrivalDispersion when the engine is created. The updates of the
+ * probability at every whole time and the shock at periodShock are events as well.
+ *
+ * The queue holds one event per agent, its next arrival, and the two market events, so the
+ * memory does not grow with the number of events. ExecutePeriod advances the clock by one
+ * unit per period, from World.period-1 to World.period, and records the market at the end of
+ * each unit. The arrivals are drawn from their own stream, apart from the noise of the
+ * probability and of the forecasts, so a run is the same for the same seed.
+ */
+class EventEngine {
+
+   private static final int PROBABILITY_UPDATE = -2;  // ids of the market events, the agents are 0..n-1
+   private static final int SHOCK = -1;               // after the update of the same time, so that the shocked probability holds
+   public static double arrivalRate = 1.0;            // mean arrivals of an agent per period
+   public static double arrivalDispersion = 0.0;      // intensities are drawn from arrivalRate*(1-arrivalDispersion)..arrivalRate*(1+arrivalDispersion)
+
+   private final EventQueue queue;
+   private final double[] intensity;
+   private final Exponential waitingTime;
+
+   EventEngine(int agents, int seed) {
+      MersenneTwister arrivals = new MersenneTwister(seed-1); // the probability noise draws from seed, further markets from seed+1, ...
+      double dispersion = Math.min(Math.max(arrivalDispersion, 0), 1);
+      Uniform spread = new Uniform(1-dispersion, 1+dispersion, arrivals);
+      queue = new EventQueue(agents+2);
+      intensity = new double[agents];
+      waitingTime = new Exponential(1.0, arrivals);
+      for (int i = 0; i < agents; i++) {
+         intensity[i] = arrivalRate*spread.nextDouble();
+      }
+      queue.add(1, PROBABILITY_UPDATE); // trading starts after the initial stocks of period 0
+      if (LMSRStock.periodShock >= 1) {
+         queue.add(LMSRStock.periodShock, SHOCK);
+      }
+      for (int i = 0; i < agents; i++) {
+         queue.add(1 + nextWaitingTime(i), i);
+      }
+   }
+
+   static boolean isSupported() { // settings under which the agents trade in continuous time, otherwise CLEAR_CONTINUOUS clears sequentially
+      return World.outcomeStock == null && World.combinatorialStock == null && World.markets == null && !AsmModel.limitOrderBook;
+   }
+
+   public void advance(double until) { // processes all events before time until in the order of their times
+      Specialist specialist = AsmModel.specialist;
+      LMSRStock stockLMSR = World.LMSRStocks;
+      double time;
+      int id;
+
+      specialist.startArrivals();
+      while (queue.getTime() < until) {
+         time = queue.getTime();
+         id = queue.getId();
+         if (id == PROBABILITY_UPDATE) {
+            stockLMSR.updateProbability();
+            queue.reschedule(time+1, id);
+         } else if (id == SHOCK) {
+            stockLMSR.probShock();
+            queue.remove();
+         } else {
+            specialist.tradeArrival(id);
+            queue.reschedule(time + nextWaitingTime(id), id);
+         }
+      }
+      specialist.setPeriodPrices();
+   }
+
+   private double nextWaitingTime(int agent) { // an agent with no intensity never arrives
+      return intensity[agent] > 0 ? waitingTime.nextDouble(intensity[agent]) : Double.POSITIVE_INFINITY;
+   }
+}
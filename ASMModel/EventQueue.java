@@ -0,0 +1,95 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+
+package ASMModel;
+
+/**
+ * A binary min-heap of events of the continuous-time market, see EventEngine. An event is
+ * a clock time and an int id, kept in two primitive arrays whose capacity is fixed when the
+ * queue is created, so that adding, rescheduling and removing events never allocates. Events
+ * at the same time are ordered by their id, so that the order in which the events happen does
+ * not depend on the order in which they were added.
+ */
+class EventQueue {
+
+   private final double[] times;
+   private final int[] ids;
+   private int size = 0;
+
+   EventQueue(int capacity) {
+      times = new double[capacity];
+      ids = new int[capacity];
+   }
+
+   public double getTime() { // time of the next event, infinite if there is none
+      return size == 0 ? Double.POSITIVE_INFINITY : times[0];
+   }
+
+   public int getId() { // id of the next event
+      return ids[0];
+   }
+
+   public void add(double time, int id) { // the queue holds at most the capacity it was created with
+      int i = size++;
+      int parent;
+      while (i > 0) {
+         parent = (i-1)/2;
+         if (!isBefore(time, id, parent)) {
+            break;
+         }
+         times[i] = times[parent];
+         ids[i] = ids[parent];
+         i = parent;
+      }
+      times[i] = time;
+      ids[i] = id;
+   }
+
+   public void reschedule(double time, int id) { // replaces the next event, e.g., by the next arrival of the same agent
+      siftDown(time, id);
+   }
+
+   public void remove() { // removes the next event
+      size--;
+      if (size > 0) {
+         siftDown(times[size], ids[size]);
+      }
+   }
+
+   private void siftDown(double time, int id) { // places the event at the top and moves it down to its place
+      int i = 0;
+      int child;
+      while ((child = 2*i+1) < size) {
+         if (child+1 < size && isBefore(times[child+1], ids[child+1], child)) {
+            child++;
+         }
+         if (!isBefore(times[child], ids[child], time, id)) {
+            break;
+         }
+         times[i] = times[child];
+         ids[i] = ids[child];
+         i = child;
+      }
+      times[i] = time;
+      ids[i] = id;
+   }
+
+   private boolean isBefore(double time, int id, int i) { // whether the event happens before the one at heap position i
+      return isBefore(time, id, times[i], ids[i]);
+   }
+
+   private static boolean isBefore(double time, int id, double otherTime, int otherId) {
+      return time < otherTime || (time == otherTime && id < otherId);
+   }
+}
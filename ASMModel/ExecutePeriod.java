@@ -13,12 +13,17 @@
 
 package ASMModel;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import uchicago.src.sim.util.Random;
 import cern.jet.random.*;
 
 /**
  * This class contains the action sequence within a period. The main method execute()
- * is called every period by the Repast scheduler.
+ * is called every period by the Repast scheduler. When the agents trade in continuous time,
+ * a period is one unit of the clock of World.eventEngine, which also schedules the update of
+ * the probability and the shock, and the market is recorded at the end of each unit.
  */
 abstract class ExecutePeriod {
    private final static int updateDisplayPeriod = ObserverOptions.updateFrequency;
@@ -35,50 +40,104 @@ abstract class ExecutePeriod {
       Specialist specialist = AsmModel.specialist;
 //       System.out.println("PERIODO: " + World.period);
       stockLMSR = World.LMSRStocks;
-      if (World.period == 0) { // at period 0, create artificial stocks necessary for initial price
-         stockLMSR.baseQLMSR(stockLMSR.getInitialQuantity());
-         int qInitial = stockLMSR.qInitLMSR(stockLMSR.getInitialPrice());
-         if (stockLMSR.getInitialPrice()<0.5) {
-            stockLMSR.setQNegLMSR(qInitial);
+      if (World.period == 0 && World.outcomeStock != null) { // the n-outcome market is seeded instead of the binary one
+         World.outcomeStock.baseQuantities(stockLMSR.getInitialQuantity());
+         World.period++;
+      } else if (World.period == 0 && World.combinatorialStock != null) { // the combinatorial market starts at its prior, without artificial stocks
+         World.period++;
+      } else if (World.period == 0) { // at period 0, create artificial stocks necessary for initial price
+         if (World.markets != null) {
+            for (int k = 0; k < World.markets.length; k++) {
+               initialQuantities(World.markets[k].getStockLMSR(), World.markets[k].getSpecialist());
+            }
          } else {
-            stockLMSR.setQPosLMSR(qInitial);
+            initialQuantities(stockLMSR, specialist);
          }
-         stockLMSR.setQPosInitial(stockLMSR.getQPosLMSR());
-         stockLMSR.setQNegInitial(stockLMSR.getQNegLMSR());
          World.period++;
-      } else if (World.period == stockLMSR.periodShock) { // if it's the shock period, change underlying probability
-         stockLMSR.probShock();
+      } else if (World.period == stockLMSR.periodShock && World.eventEngine == null) { // if it's the shock period, change underlying probability
+         if (World.markets != null) {
+            for (int k = 0; k < World.markets.length; k++) {
+               World.markets[k].getStockLMSR().probShock();
+            }
+         } else {
+            stockLMSR.probShock();
+         }
          World.period++;
          // System.out.println("Wealth: " + agent.getWealth());
       } else if (World.period == World.numberOfPeriods-1) { // at the last period, pays out agent investments
          double totalWealth = 0;
-         for (int j = 0; j < World.numberOfLMSRAgents; j++) {
-            agent = World.Agents[j];
-            agent.setPayout();
-            // System.out.println("Wealth: " + agent.getWealth());
-            totalWealth += agent.getWealth();
+         long totalWealthUnits = 0;
+         World.settled = true; // the wealth of an agent is its payout from here on
+         if (World.isWealthAggregated()) { // one binary market is paid out from the totals of its agents, an agent's own payout is computed when asked for
+            totalWealth = World.getAggregateWealth();
+            totalWealthUnits = World.getAggregateWealthUnits();
+         } else {
+            for (int j = 0; j < World.numberOfLMSRAgents; j++) {
+               agent = World.Agents[j];
+               agent.setPayout();
+               if (World.markets != null) {
+                  Market.addPositions(World.markets, j, true);
+               }
+               // System.out.println("Wealth: " + agent.getWealth());
+               totalWealth += agent.getWealth();
+               totalWealthUnits += agent.getWealthUnits();
+            }
+         }
+         if (AsmModel.fixedPointLedger) {
+            totalWealth = Ledger.toDouble(totalWealthUnits);
          }
-         specialist.setSpecialistLiabilities();
+         World.setTotalWealth(totalWealth);
+         setSpecialistLiabilities(specialist);
 //            System.out.println("Revenue: " + specialist.getSpecialistRevenue());
 //            System.out.println("Payout: " + specialist.getSpecialistLiabilities());
 //            System.out.println("MM Loss: " + (specialist.getSpecialistRevenue()-specialist.getSpecialistLiabilities()));
 //            System.out.println("totalWealth: " + totalWealth);
       } else { // behavior in all other periods
          double totalWealth = 0;
+         long totalWealthUnits = 0;
          World.period++;       // initial values for period 0 are set and shouldn't be altered anymore
-         stockLMSR.updateProbability();
-         for (int j = 0; j < World.numberOfLMSRAgents; j++) {
-            agent = World.Agents[j];
-         }    // for all agents
-         AsmModel.specialist.adjustPricePrediction();  // specialist gets market maker price for 1 stock
-         for (int j = 0; j < World.numberOfLMSRAgents; j++) {
-            agent = World.Agents[j];
-            agent.getEarningsAndPayTaxes(); // sets agent wealth
-            totalWealth += agent.getWealth();
-            // System.out.println("Wealth: " + agent.getWealth());
-         }        // for all agents
+         if (World.markets == null && World.eventEngine == null) { // each market updates its own probability when it clears
+            stockLMSR.updateProbability();
+         }
+         if (World.eventEngine != null) { // the events from World.period-1 up to World.period
+            World.eventEngine.advance(World.period);
+         } else if (World.markets != null) {
+            Market.clear(World.markets); // all markets clear on the fork-join pool
+         } else if (World.combinatorialStock != null) {
+            World.combinatorialStock.updateProbabilities();
+            AsmModel.specialist.adjustPatternPrices();
+         } else if (World.outcomeStock != null) {
+            AsmModel.specialist.adjustOutcomePrices();
+         } else {
+            AsmModel.specialist.adjustPricePrediction();  // specialist gets market maker price for 1 stock
+         }
+         if (World.isWealthAggregated()) { // one binary market: the wealth of all agents follows from their totals
+            World.setMinimumCash();
+            totalWealth = World.getAggregateWealth();
+            totalWealthUnits = World.getAggregateWealthUnits();
+         } else if (World.outcomeStock == null && World.combinatorialStock == null) { // several binary markets: wealth only depends on the agent's own holdings
+            Earnings earnings = new Earnings(0, World.numberOfLMSRAgents);
+            if (World.numberOfLMSRAgents > Specialist.DECISION_BLOCK) {
+               ForkJoinPool.commonPool().invoke(earnings);
+            } else {
+               earnings.compute();
+            }
+            totalWealth = earnings.wealth;
+            totalWealthUnits = earnings.wealthUnits;
+         } else {
+            for (int j = 0; j < World.numberOfLMSRAgents; j++) {
+               agent = World.Agents[j];
+               agent.getEarningsAndPayTaxes(); // sets agent wealth
+               totalWealth += agent.getWealth();
+               totalWealthUnits += agent.getWealthUnits();
+               // System.out.println("Wealth: " + agent.getWealth());
+            }        // for all agents
+         }
+         if (AsmModel.fixedPointLedger) { // sums of micro-units are exact in any order
+            totalWealth = Ledger.toDouble(totalWealthUnits);
+         }
          World.setTotalWealth(totalWealth);
-      specialist.setSpecialistLiabilities();
+      setSpecialistLiabilities(specialist);
 //            System.out.println("Revenue: " + specialist.getSpecialistRevenue());
 //            System.out.println("Profit: " + specialist.getSpecialistProfit());
 //            System.out.println("Liabilities: " + specialist.getSpecialistLiabilities());
@@ -100,6 +159,66 @@ abstract class ExecutePeriod {
    }  // execute()
 
 
+   /**
+    * Earnings of World.Agents[from..to-1] and the sum of their wealth. The agents are split in
+    * halves down to blocks of Specialist.DECISION_BLOCK, which are summed in agent order, and
+    * the halves are added after both are done. The sum is therefore the same for any number
+    * of threads, and for up to one block of agents it is the plain sum in agent order.
+    */
+   private static class Earnings extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+      private final int from;
+      private final int to;
+      private double wealth;
+      private long wealthUnits;
+
+      Earnings(int from, int to) {
+         this.from = from;
+         this.to = to;
+      }
+
+      protected void compute() {
+         Agent trader;
+         if (to-from <= Specialist.DECISION_BLOCK) {
+            for (int j = from; j < to; j++) {
+               trader = World.Agents[j];
+               trader.getEarningsAndPayTaxes(); // sets agent wealth
+               if (World.markets != null) {
+                  Market.addPositions(World.markets, j, false);
+               }
+               wealth += trader.getWealth();
+               wealthUnits += trader.getWealthUnits();
+            }
+            return;
+         }
+         int middle = (from+to)/2;
+         Earnings first = new Earnings(from, middle);
+         Earnings second = new Earnings(middle, to);
+         invokeAll(first, second);
+         wealth = first.wealth + second.wealth;
+         wealthUnits = first.wealthUnits + second.wealthUnits;
+      }
+   }
+
+   private static void initialQuantities(LMSRStock stockLMSR, Specialist specialist) { // artificial stocks of a market, so that its first price is the initial price
+      stockLMSR.baseQLMSR(stockLMSR.getInitialQuantity());
+      int qInitial = stockLMSR.qInitLMSR(specialist.getScoringRule());
+      if (stockLMSR.getInitialPrice()<0.5) {
+         stockLMSR.setQNegLMSR(qInitial);
+      } else {
+         stockLMSR.setQPosLMSR(qInitial);
+      }
+      stockLMSR.setQPosInitial(stockLMSR.getQPosLMSR());
+      stockLMSR.setQNegInitial(stockLMSR.getQNegLMSR());
+   }
+
+   private static void setSpecialistLiabilities(Specialist specialist) {
+      specialist.setSpecialistLiabilities();
+      for (int k = 1; World.markets != null && k < World.markets.length; k++) {
+         World.markets[k].getSpecialist().setSpecialistLiabilities();
+      }
+   }
+
    static void graphDisplay() {
          displayPeriod++;
 
@@ -28,8 +28,11 @@ public class LMSRAgent extends Agent implements CustomProbeable {
          traders++;
          this.ID = traders;
          cash = initialCash;
+         cashUnits = Ledger.toUnits(initialCash);
          stockLMSR = World.LMSRStocks;
+         specialist = AsmModel.specialist;
          wealth = cash + numberOfPosStocks*stockLMSR.getPrice() + numberOfNegStocks*stockLMSR.getPriceNoStock();
+         wealthUnits = cashUnits;
          World.setTotalWealth(World.getTotalWealth()+wealth);
       } else { // actual instance of a trader which is only used to set the static parameters through the gui
          staticAgent = true;
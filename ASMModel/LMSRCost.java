@@ -0,0 +1,93 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+package ASMModel;
+
+/**
+ * The LMSR cost function C(qPos,qNeg) = b*log(exp(qPos/b)+exp(qNeg/b)) and the cost of
+ * an order, written so that they never overflow. The cost function is shifted by the
+ * larger quantity before exponentiating, max(qPos,qNeg) + b*log(1+exp(-|qPos-qNeg|/b)),
+ * and the cost of an order adds the change of the shifts to the change of the bounded
+ * log terms instead of subtracting two large cost function values.
+ */
+final class LMSRCost {
+
+   private LMSRCost() {
+   }
+
+   static double cost(double qPos, double qNeg, double b) { // value of the cost function
+      return Math.max(qPos, qNeg) + b*logTerm(qPos, qNeg, b);
+   }
+
+   static double logTerm(double qPos, double qNeg, double b) { // log(1+exp(-|qPos-qNeg|/b)), always between 0 and log(2)
+      return Math.log1p(Math.exp(-Math.abs(qPos-qNeg)/b));
+   }
+
+   static double price(double qPos, double qNeg, double b, boolean pos) { // instantaneous price of a positive or negative stock
+      if (pos) {
+         return 1/(1+Math.exp((qNeg-qPos)/b));
+      } else {
+         return 1/(1+Math.exp((qPos-qNeg)/b));
+      }
+   }
+
+   static double costDifference(double qPos, double qNeg, double qPosPost, double qNegPost, double b) { // C(qPosPost,qNegPost)-C(qPos,qNeg)
+      return (Math.max(qPosPost, qNegPost) - Math.max(qPos, qNeg)) + b*(logTerm(qPosPost, qNegPost, b) - logTerm(qPos, qNeg, b));
+   }
+
+   static double orderCost(double qPos, double qNeg, double b, double order, boolean pos) { // cost of buying (or selling, if negative) order stocks
+      if (pos) {
+         return costDifference(qPos, qNeg, qPos+order, qNeg, b);
+      } else {
+         return costDifference(qPos, qNeg, qPos, qNeg+order, b);
+      }
+   }
+
+   // Cost and inverses for one security of an LMSR with any number of states, e.g., an outcome of MultiOutcomeStock
+   // or a pattern of CombinatorialStock. They only depend on its price and on 1-price, passed as priceOther to keep
+   // its precision near 1, because buying x stocks multiplies the weight of the states it pays on by exp(x/b).
+
+   static double securityCost(double price, double priceOther, double b, double order) { // cost of buying (or selling, if negative) order stocks of the security
+      if (order/b > 700) { // exp(order/b) would overflow, the cost is expanded around order instead
+         return order + b*(Math.log(price) + Math.log1p(Math.exp(-order/b)*priceOther/price));
+      }
+      if (order < 0 && Math.expm1(order/b)*price < -0.5) { // selling most of the weight, 1+expm1*price would cancel
+         return b*Math.log(priceOther + price*Math.exp(order/b));
+      }
+      return b*Math.log1p(Math.expm1(order/b)*price); // b*log(1-price + price*exp(order/b))
+   }
+
+   static double securityQuantityForPrice(double price, double priceOther, double b, double targetPrice) { // order whose last stock costs exactly targetPrice
+      if (!(targetPrice > 0) || !(priceOther > 0)) { // prices never fall to 0 or rise to 1, so these targets are unreachable
+         return Double.NEGATIVE_INFINITY;
+      }
+      if (!(targetPrice < 1)) {
+         return Double.POSITIVE_INFINITY;
+      }
+      // as LMSRStock.quantityForPrice, with exp(-qDiff/b) replaced by the ratio of the prices
+      return 1 + b*Math.log(priceOther*Math.expm1(targetPrice/b)/(price*(Math.expm1(1/b)-Math.expm1(targetPrice/b))));
+   }
+
+   static double securityQuantityForCost(double price, double priceOther, double b, double cost) { // order that costs exactly cost
+      if (cost/b > 700) {
+         return cost + b*(Math.log(-Math.expm1(-cost/b) + price*Math.exp(-cost/b)) - Math.log(price));
+      }
+      if (cost >= 0) {
+         return b*Math.log1p(Math.expm1(cost/b)/price);
+      }
+      if (!(Math.exp(cost/b) > priceOther)) { // selling every stock cannot bring in more than -b*log(1-price)
+         return Double.NEGATIVE_INFINITY;
+      }
+      return b*(Math.log(Math.exp(cost/b) - priceOther) - Math.log(price));
+   }
+}
@@ -0,0 +1,53 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+package ASMModel;
+
+/**
+ * Hanson's logarithmic market scoring rule, C(qPos,qNeg) = b*log(exp(qPos/b)+exp(qNeg/b)).
+ * Costs, prices and both inverses come from the state LMSRStock caches for the current
+ * quantities. AsmModel.LS_LMSR uses LiquiditySensitiveRule instead.
+ */
+class LMSRRule extends MarketScoringRule {
+
+   public LMSRRule() {
+   }
+
+   public double costDifference(LMSRStock stock, double qPos, double qNeg, double qPosPost, double qNegPost) {
+      return LMSRCost.costDifference(qPos, qNeg, qPosPost, qNegPost, stock.getBLiq());
+   }
+
+   public double price(LMSRStock stock, double qPos, double qNeg, boolean pos) {
+      return LMSRCost.price(qPos, qNeg, stock.getBLiq(), pos);
+   }
+
+   public double orderCost(LMSRStock stock, double order, boolean pos) {
+      return stock.orderCost(order, pos);
+   }
+
+   public void orderCosts(LMSRStock stock, boolean pos, boolean buy, double[] costs, int n) {
+      stock.orderCosts(pos, buy, costs, n);
+   }
+
+   public double price(LMSRStock stock, boolean pos) {
+      return stock.getMarginalPrice(pos);
+   }
+
+   public double quantityForPrice(LMSRStock stock, double targetPrice, boolean pos) {
+      return stock.quantityForPrice(targetPrice, pos);
+   }
+
+   public double quantityForCost(LMSRStock stock, double cost, boolean pos) {
+      return stock.quantityForCost(cost, pos);
+   }
+}
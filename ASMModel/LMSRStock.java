@@ -16,6 +16,7 @@ package ASMModel;
 import uchicago.src.reflector.DescriptorContainer;
 import uchicago.src.reflector.ListPropertyDescriptor;
 import uchicago.src.sim.engine.CustomProbeable;
+import cern.jet.random.Normal;
 
 import java.util.Hashtable;
 
@@ -40,9 +41,9 @@ public class LMSRStock extends Asset implements CustomProbeable, DescriptorConta
    private double meanTradingVolumeNo = 0;
    protected double noiseVar = 0.07429;
    protected double noise = 0;
-   protected static double bLiq = 10;
+   protected double bLiq = 10;              // each market has its own liquidity, LS-LMSR changes it while trading
    protected static double alphaLS = 0.15; // used in Othman (2013): 0.05 // 0.15 corresponds to a "vig" of 20%
-   protected static double probability = 0.5;
+   protected double probability = 0.5;
    protected static double initialPrice = 0.5;
    protected static double probAfterShock = 0.2;
    protected static double periodShock = 0;
@@ -54,6 +55,17 @@ public class LMSRStock extends Asset implements CustomProbeable, DescriptorConta
    protected double priceNoStock = 0;
    protected double priceSum = 0;
 
+   // LMSR state at the current quantities, refreshed on every trade and every change of bLiq
+   private double stateBLiq = Double.NaN; // bLiq the state was computed with, NaN if it has to be recomputed
+   private double stateCost;              // cost function C(qPos,qNeg)
+   private double stateLogTerm;           // log(1+exp(-|qPos-qNeg|/b)) of the shifted cost function
+   private double stateExpPos;            // exp((qPos-max(qPos,qNeg))/b)
+   private double stateExpNeg;            // exp((qNeg-max(qPos,qNeg))/b)
+   private double statePricePos;          // instantaneous price of a positive stock
+   private double statePriceNeg;          // instantaneous price of a negative stock
+   private static final int EXP_ANCHOR = 32;   // stocks between two exact exps of a quote ladder
+   private Normal noiseSource;                  // noise of this market, null for the one of World.LMSRStocks which draws from AsmModel.LMSRNormal
+
    protected double nextProbability = 0;
    protected double pLagged1 = probability;
    protected double pLagged2 = probability;
@@ -62,6 +74,12 @@ public class LMSRStock extends Asset implements CustomProbeable, DescriptorConta
    protected double beta3 = -1.50537449;
    protected double RHS = 0;
 
+   // market information shared by all agents trading in a period, see updateMarketInformation
+   private int informationPeriod = -1;       // period the information was computed for, -1 if it has to be recomputed
+   private double informationRiskAversion;   // Agent.riskAversion the divisor was computed with
+   private double logitForecast;             // forecast of the agents of type Agent.LOGIT
+   private double riskDivisor;               // riskAversion*probability*(1-probability) of the CARA demand
+
    private Hashtable descriptors = new Hashtable();
 
    public Hashtable getParameterDescriptors() {
@@ -81,11 +99,84 @@ public class LMSRStock extends Asset implements CustomProbeable, DescriptorConta
       this.price = initialPrice;     // add probability for LMSR
    }  // initialize()
 
+   protected LMSRStock copyMarket(Normal noise) { // stock of another, independent market with the parameters of this one and its own noise
+      LMSRStock stock = new LMSRStock();
+      stock.bLiq = bLiq;
+      stock.probability = probability;
+      stock.pLagged1 = pLagged1;
+      stock.pLagged2 = pLagged2;
+      stock.noiseSource = noise;
+      stock.initialize();
+      return stock;
+   }
+
+   protected double nextNoise() { // next draw of the noise of this market, used by the probability process and by the agents trading in it
+      if (noiseSource == null) {
+         return AsmModel.LMSRNormal.nextDouble();
+      }
+      return noiseSource.nextDouble();
+   }
+
    protected void liquiditySensitiveB (double alpha, double qPos, double qNeg) { // implements Liquidity Sensitive LMSR (Othman 2003)
       double b;
       double qTot = qPos + qNeg;
       b = alpha*qTot;
       this.bLiq = b;
+      updateCostState();
+   }
+
+   private void updateCostState() { // recomputes the cached LMSR state from the current quantities and bLiq
+      double max = Math.max(qPosLMSR, qNegLMSR);
+      stateBLiq = bLiq;
+      stateExpPos = Math.exp((qPosLMSR-max)/bLiq); // one of the two terms is exp(0) = 1
+      stateExpNeg = Math.exp((qNegLMSR-max)/bLiq);
+      stateLogTerm = Math.log1p(Math.exp(-Math.abs(qPosLMSR-qNegLMSR)/bLiq)); // same as LMSRCost.logTerm
+      stateCost = max + bLiq*stateLogTerm;
+      statePricePos = stateExpPos/(stateExpPos+stateExpNeg);
+      statePriceNeg = stateExpNeg/(stateExpPos+stateExpNeg);
+   }
+
+   private void checkCostState() { // bLiq may be assigned without passing through setBLiq
+      if (stateBLiq != bLiq) {
+         updateCostState();
+      }
+   }
+
+   protected double orderCost (double order, boolean pos) { // cost of buying (or selling, if negative) order stocks at the current quantities, only the post-trade term is evaluated
+      double qPosPost = qPosLMSR;
+      double qNegPost = qNegLMSR;
+      checkCostState();
+      if (pos) {
+         qPosPost += order;
+      } else {
+         qNegPost += order;
+      }
+      return (Math.max(qPosPost, qNegPost) - Math.max(qPosLMSR, qNegLMSR)) + bLiq*(LMSRCost.logTerm(qPosPost, qNegPost, bLiq) - stateLogTerm);
+   }
+
+   protected void orderCosts (boolean pos, boolean buy, double[] costs, int n) { // orderCost of 1..n stocks bought (or sold) into costs[0..n-1], with one exp every EXP_ANCHOR stocks
+      double qOwn = pos ? qPosLMSR : qNegLMSR;
+      double qOther = pos ? qNegLMSR : qPosLMSR;
+      double step = buy ? 1 : -1;
+      double max = Math.max(qOwn, qOther);
+      double r = Math.exp(-1/bLiq);   // exp(-|qOwn-qOther|/b) shrinks by this factor per stock away from equal quantities
+      double rInv = Math.exp(1/bLiq); // and grows by this one per stock towards them
+      double d = qOwn - qOther;
+      double dPost;
+      double term = 0;
+      checkCostState();
+
+      for (int k = 1; k <= n; k++) {
+         dPost = d + step*k;
+         if (k % EXP_ANCHOR == 1 || dPost*(dPost-step) <= 0) { // recomputed now and then, so that the error of the products does not build up, and where the quantities cross
+            term = Math.exp(-Math.abs(dPost)/bLiq);
+         } else if (Math.abs(dPost) > Math.abs(dPost-step)) {
+            term *= r;
+         } else {
+            term *= rInv;
+         }
+         costs[k-1] = (Math.max(qOther+dPost, qOther) - max) + bLiq*(Math.log1p(term) - stateLogTerm); // same as orderCost(step*k, pos)
+      }
    }
 
    protected void baseQLMSR (double quantity) { // adds artificial initial stocks
@@ -94,25 +185,47 @@ public class LMSRStock extends Asset implements CustomProbeable, DescriptorConta
    }
 
    protected double firstPrice (int qPos,int qNeg, double bLiq, boolean pos) { // gets price of buying one stock in LMSR
-      double costFunc;
-      double costFuncPost;
-      double cost;
+      return LMSRCost.orderCost(qPos, qNeg, getBLiq(), 1, pos);
+   }
 
-      costFunc = getBLiq()*Math.log(Math.exp(qPos/getBLiq())+Math.exp(qNeg/getBLiq()));
+   protected double quantityForPrice (double targetPrice, boolean pos) { // inverts the LMSR: order size whose last stock costs exactly targetPrice, before any rounding
       if (pos) { // differentiates between buying positive or negative stocks
-         costFuncPost = getBLiq()*Math.log(Math.exp((qPos+1)/getBLiq())+Math.exp(qNeg/getBLiq()));
+         return quantityForPrice(targetPrice, qPosLMSR - qNegLMSR, getBLiq());
       } else {
-         costFuncPost = getBLiq()*Math.log(Math.exp((qPos)/getBLiq())+Math.exp((qNeg+1)/getBLiq()));
+         return quantityForPrice(targetPrice, qNegLMSR - qPosLMSR, getBLiq());
+      }
+   }
+
+   private static double quantityForPrice (double targetPrice, double qDiff, double b) { // qDiff is the quantity of the bought stock minus the quantity of the other one
+      if (!(targetPrice > 0)) { // prices never fall to 0 or rise to 1, so these targets are unreachable
+         return Double.NEGATIVE_INFINITY;
+      }
+      if (!(targetPrice < 1)) {
+         return Double.POSITIVE_INFINITY;
       }
+      // the k-th stock costs b*log((exp((qDiff+k)/b)+1)/(exp((qDiff+k-1)/b)+1)), solved for k
+      return 1 - qDiff + b*Math.log(Math.expm1(targetPrice/b)/(Math.expm1(1/b)-Math.expm1(targetPrice/b)));
+   }
 
-      cost = costFuncPost - costFunc;
+   protected double quantityForCost (double cost, boolean pos) { // inverts the LMSR cost function: order size that costs exactly cost at the current quantities, before any rounding
+      double price = getMarginalPrice(pos);
+      double priceOther = getMarginalPrice(!pos);
+      double b = getBLiq();
 
-      return cost;
+      if (cost/b > 700) { // exp(cost/b) would overflow, b*log(1+(exp(cost/b)-1)/price) is expanded around cost instead
+         return cost + b*(Math.log(-Math.expm1(-cost/b) + price*Math.exp(-cost/b)) - Math.log(price));
+      }
+      if (cost >= 0) {
+         return b*Math.log1p(Math.expm1(cost/b)/price);
+      }
+      if (!(Math.exp(cost/b) > priceOther)) { // selling every stock cannot bring in more than -b*log(1-price)
+         return Double.NEGATIVE_INFINITY;
+      }
+      return b*(Math.log(Math.exp(cost/b) - priceOther) - Math.log(price)); // same as above, with 1-price taken from the other stock to keep its precision
    }
 
-   protected int qInitLMSR (double initialProbability) { // creates artificial stocks so next price equals given initial probability
-      int qInit = 0;
-      int iterator = 0;
+   protected int qInitLMSR (MarketScoringRule rule) { // creates artificial stocks so next price equals given initial probability, called while both quantities are equal
+      int qInit;
       double priceLim;
 
       if (getInitialPrice() < 0.5) { // price of positive and negative stocks are complementary
@@ -120,24 +233,32 @@ public class LMSRStock extends Asset implements CustomProbeable, DescriptorConta
       } else {
          priceLim = getInitialPrice();
       }
+      if (!(priceLim < 1)) { // no finite number of stocks reaches a price of 0 or 1, seeded as 0.001 or 0.999 like the bounds of the random walk
+         priceLim = 0.999;
+      }
 
-      while (qInit == 0) {
-         iterator++;
-         double priceMid = firstPrice(iterator, 0, getBLiq(), true);
-         if (priceLim < priceMid) {
-            qInit = iterator;
-         }
+      // smallest quantity at which buying one more stock costs more than priceLim: nextPrice(rule, qInit) is the price of stock qInit+1
+      qInit = Math.max(1, (int) Math.floor(rule.quantityForPrice(this, priceLim, true) - 1) + 1);
+      while (qInit > 1 && priceLim < nextPrice(rule, qInit-1)) { // corrects floating point error of the inverse
+         qInit--;
+      }
+      while (!(priceLim < nextPrice(rule, qInit))) {
+         qInit++;
       }
       return qInit;
    }
 
+   private double nextPrice (MarketScoringRule rule, int qInit) { // price of one more positive stock after qInit were added, for LMSR the same as firstPrice(qInit,0)
+      return rule.costDifference(this, qPosLMSR+qInit, qNegLMSR, qPosLMSR+qInit+1, qNegLMSR);
+   }
+
    protected void probShock () { // adds probability shock at time set in GUI
       setProbability(getProbAfterShock()); //called in ExecutePeriod
    }
 
    // Standard-update-process for OUP
    public void updateProbability() {
-      noise = AsmModel.LMSRNormal.nextDouble();
+      noise = nextNoise();
       switch (probabilityProcess) {
          case FIXED: // a fixed probability, subject only to shocks
                   nextProbability = probability;
@@ -163,8 +284,30 @@ public class LMSRStock extends Asset implements CustomProbeable, DescriptorConta
                   break;
       }	// switch
       setProbability(nextProbability);
+      updateMarketInformation();
    }  // updateValue
 
+   protected void updateMarketInformation() { // computes the information all agents read in this period, unless it is up to date
+      if (informationPeriod == World.period && informationRiskAversion == Agent.riskAversion) {
+         return;
+      }
+      double RHS = beta1*(World.period) + beta2*pLagged1 + beta3*pLagged2;
+      logitForecast = Math.exp(RHS) / (1 + Math.exp(RHS));
+      riskDivisor = Agent.riskAversion*probability*(1-probability);
+      informationRiskAversion = Agent.riskAversion;
+      informationPeriod = World.period;
+   }
+
+   protected double getLogitForecast() {
+      updateMarketInformation();
+      return logitForecast;
+   }
+
+   protected double getRiskDivisor() { // divisor of the CARA demand for the probability of this period
+      updateMarketInformation();
+      return riskDivisor;
+   }
+
 
    protected void updateState() {
    }  // updateState
@@ -200,6 +343,7 @@ public class LMSRStock extends Asset implements CustomProbeable, DescriptorConta
    public double getBLiq() { return bLiq; }
    public void setBLiq(double value) {
       this.bLiq = value;
+      updateCostState();
    }
    public double getAlphaLS() { return alphaLS; }
    public void setAlphaLS(double value) {
@@ -208,6 +352,7 @@ public class LMSRStock extends Asset implements CustomProbeable, DescriptorConta
    public double getProbability() { return probability; }
    public void setProbability(double value) {
       this.probability = value;
+      informationPeriod = -1;
    }
    public double getInitialPrice() { return initialPrice; }
    public void setInitialPrice(double value) {
@@ -224,9 +369,15 @@ public class LMSRStock extends Asset implements CustomProbeable, DescriptorConta
    public double getPeriodShock() { return periodShock; }
    public void setPeriodShock(double value) { this.periodShock = value; }
    public double getQPosLMSR() { return qPosLMSR; }
-   public void setQPosLMSR(double value) { this.qPosLMSR += value; }
+   public void setQPosLMSR(double value) {
+      this.qPosLMSR += value;
+      updateCostState();
+   }
    public double getQNegLMSR() { return qNegLMSR; }
-   public void setQNegLMSR(double value) { this.qNegLMSR += value; }
+   public void setQNegLMSR(double value) {
+      this.qNegLMSR += value;
+      updateCostState();
+   }
    public double getQPosInitial() { return qPosInitial; }
    public void setQPosInitial(double value) { this.qPosInitial = value; }
    public double getQNegInitial() { return qNegInitial; }
@@ -273,9 +424,30 @@ public class LMSRStock extends Asset implements CustomProbeable, DescriptorConta
    public double getUnitPrice() {
       return unitPrice;
    }
+   public double getCostFunction() {
+      checkCostState();
+      return stateCost;
+   }
+   public double getExpPos() {
+      checkCostState();
+      return stateExpPos;
+   }
+   public double getExpNeg() {
+      checkCostState();
+      return stateExpNeg;
+   }
+   public double getMarginalPrice(boolean pos) {
+      checkCostState();
+      if (pos) {
+         return statePricePos;
+      } else {
+         return statePriceNeg;
+      }
+   }
    public void setResetLMSRStocks() {
       this.qNegLMSR = 0;
       this.qPosLMSR = 0;
+      updateCostState();
    }
 
    public String[] getProbedProperties() {
@@ -0,0 +1,41 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+package ASMModel;
+
+/**
+ * Conversions for the fixed-point ledger. When AsmModel.fixedPointLedger is on, cash,
+ * market maker revenue and liabilities and stock holdings are booked as whole micro-units
+ * in longs, so that sums do not drift and come out the same in any order. The double
+ * fields of Agent and Specialist then only mirror the ledger for display and recording.
+ */
+final class Ledger {
+
+   static final long UNITS = 1000000L; // micro-units per unit of cash or per stock
+   static final int DIGITS = 6;
+
+   private Ledger() {
+   }
+
+   static long toUnits(double value) { // nearest micro-unit, exact for values with at most six decimals
+      return Math.round(value*UNITS);
+   }
+
+   static double toDouble(long units) {
+      return units/(double) UNITS;
+   }
+
+   static long multiply(long units, long otherUnits) { // product of two micro-unit amounts, e.g., stocks times price, truncated to a micro-unit
+      return (units/UNITS)*otherUnits + (units%UNITS)*otherUnits/UNITS; // whole stocks are multiplied exactly without overflowing
+   }
+}
@@ -0,0 +1,182 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+
+package ASMModel;
+
+/**
+ * Liquidity-sensitive LMSR of Othman et al. (2013), used when AsmModel.LS_LMSR is on. The
+ * liquidity grows with the outstanding stocks, b(q) = alphaLS*(qPos+qNeg), inside the cost
+ * function C(q) = b(q)*log(exp(qPos/b(q))+exp(qNeg/b(q))), so every order is priced along
+ * the path of b its own stocks create, and the prices sum to more than 1, the vig of the
+ * market maker. At the current quantities C is the LMSR cost function at b(q), which
+ * updateLiquidity mirrors to the stock before every agent trades, so the cost before an
+ * order is read from the state LMSRStock caches and probing an order only reads shared
+ * state. There are no closed form inverses. They start from the LMSR order at the current
+ * b and take Newton steps on the exact prices
+ *    pPos = max(qPos,qNeg)/qTot + alpha*log(1+exp(-|qPos-qNeg|/b)) + qNeg/qTot*tanh((qPos-qNeg)/(2b)),
+ * which share their exp and log with the cost function, and only fall back to the bracketed
+ * iteration of MarketScoringRule if a step leaves the stocks before they bracket the root.
+ * Targets above the largest price the rule can quote need no iteration at all.
+ */
+class LiquiditySensitiveRule extends MarketScoringRule {
+
+   private static final int MAX_NEWTON_STEPS = 8;
+   private static final double QUANTITY_TOLERANCE = 1e-12;   // as in MarketScoringRule
+
+   public LiquiditySensitiveRule() {
+   }
+
+   private static double cost(double qPos, double qNeg, double alpha) {
+      double b = alpha*(qPos+qNeg);
+      if (!(b > 0)) { // no liquidity left, the cost function is the larger quantity
+         return Math.max(qPos, qNeg);
+      }
+      return LMSRCost.cost(qPos, qNeg, b);
+   }
+
+   private static double currentCost(LMSRStock stock, double alpha) { // C at the outstanding stocks, cached by the stock while its b is b(q)
+      double b = alpha*(stock.getQPosLMSR()+stock.getQNegLMSR());
+      if (b > 0 && b == stock.getBLiq()) {
+         return stock.getCostFunction();
+      }
+      return cost(stock.getQPosLMSR(), stock.getQNegLMSR(), alpha);
+   }
+
+   public double costDifference(LMSRStock stock, double qPos, double qNeg, double qPosPost, double qNegPost) {
+      double alpha = stock.getAlphaLS();
+      return cost(qPosPost, qNegPost, alpha) - cost(qPos, qNeg, alpha);
+   }
+
+   public double orderCost(LMSRStock stock, double order, boolean pos) { // only the post-trade cost function is evaluated
+      double alpha = stock.getAlphaLS();
+      if (pos) {
+         return cost(stock.getQPosLMSR()+order, stock.getQNegLMSR(), alpha) - currentCost(stock, alpha);
+      } else {
+         return cost(stock.getQPosLMSR(), stock.getQNegLMSR()+order, alpha) - currentCost(stock, alpha);
+      }
+   }
+
+   public double price(LMSRStock stock, double qPos, double qNeg, boolean pos) {
+      double alpha = stock.getAlphaLS();
+      double qTot = qPos+qNeg;
+      double b = alpha*qTot;
+      double qOwn = pos ? qPos : qNeg;
+      double qOther = pos ? qNeg : qPos;
+      if (!(b > 0)) {
+         return qOwn > qOther ? 1 : (qOwn == qOther ? 0.5 : 0);
+      }
+      return Math.max(qPos, qNeg)/qTot + alpha*LMSRCost.logTerm(qPos, qNeg, b) + qOther/qTot*Math.tanh((qOwn-qOther)/(2*b));
+   }
+
+   /**
+    * Bound of the prices of both stocks. With x = qOther/qTot and t = exp(-(1-2x)/alpha),
+    * the price of the larger stock is 1 - x*2t/(1+t) + alpha*log(1+t) <= 1 + t*(alpha-x),
+    * which peaks at x = alpha/2, and the smaller one costs less than 1/2 + alpha*log(2),
+    * below 1 for the vigs this bound is used with.
+    */
+   private static double maxPrice(double alpha) {
+      if (!(alpha*Math.log(2) < 0.5)) {
+         return Double.POSITIVE_INFINITY;
+      }
+      return 1 + alpha/2*Math.exp(1 - 1/alpha);
+   }
+
+   public double quantityForPrice(LMSRStock stock, double targetPrice, boolean pos) { // starts from the LMSR order at the current b, which leaves out the vig and the growth of b
+      double b = stock.getAlphaLS()*(stock.getQPosLMSR()+stock.getQNegLMSR());
+      double price = LMSRCost.price(stock.getQPosLMSR(), stock.getQNegLMSR(), b, pos);
+      double priceOther = LMSRCost.price(stock.getQPosLMSR(), stock.getQNegLMSR(), b, !pos);
+      if (!(targetPrice > 0)) { // prices stay positive, as for LMSR no order reaches these targets
+         return Double.NEGATIVE_INFINITY;
+      }
+      if (!(targetPrice < maxPrice(stock.getAlphaLS()))) { // nor does any reach a price above all prices
+         return Double.POSITIVE_INFINITY;
+      }
+      return solveNewton(stock, targetPrice, pos, true, LMSRCost.securityQuantityForPrice(price, priceOther, b, targetPrice));
+   }
+
+   public double quantityForCost(LMSRStock stock, double cost, boolean pos) {
+      double b = stock.getAlphaLS()*(stock.getQPosLMSR()+stock.getQNegLMSR());
+      double price = LMSRCost.price(stock.getQPosLMSR(), stock.getQNegLMSR(), b, pos);
+      return solveNewton(stock, cost, pos, false, LMSRCost.securityQuantityForCost(price, 1-price, b, cost));
+   }
+
+   /**
+    * solveQuantity by Newton steps from guess alone. The exact LMSR order is close enough
+    * for these to converge in a few steps. Every step narrows a bracket of the root and a
+    * step leaving a closed bracket bisects it. The bracketed iteration takes over from the
+    * last step if one leaves the bracket while it is open, if the slope is not positive or if
+    * MAX_NEWTON_STEPS do not reach QUANTITY_TOLERANCE.
+    */
+   private double solveNewton(LMSRStock stock, double target, boolean pos, boolean lastStock, double guess) {
+      double alpha = stock.getAlphaLS();
+      double qOwn = pos ? stock.getQPosLMSR() : stock.getQNegLMSR();
+      double qOther = pos ? stock.getQNegLMSR() : stock.getQPosLMSR();
+      double base = lastStock ? 0 : currentCost(stock, alpha);
+      double lo = Double.NEGATIVE_INFINITY;
+      double hi = Double.POSITIVE_INFINITY;
+      double k = guess;
+      double next;
+      double error;
+      double slope;
+      double own;
+      double qTot;
+      double b;
+      double max;
+      double t;
+      double logTerm;
+      double sign;
+
+      for (int i = 0; i < MAX_NEWTON_STEPS && Math.abs(k) < Double.POSITIVE_INFINITY; i++) {
+         error = -base - target;
+         slope = 0;
+         for (int j = 0; j < (lastStock ? 2 : 1); j++) { // the cost function and price after k stocks, and after k-1 for the last one
+            own = qOwn + (k-j);
+            qTot = own + qOther;
+            b = alpha*qTot;
+            if (!(b > 0)) {
+               return solveQuantity(stock, target, pos, lastStock, k);
+            }
+            max = Math.max(own, qOther);
+            t = Math.exp(-Math.abs(own-qOther)/b);
+            logTerm = Math.log1p(t);
+            sign = j == 0 ? 1 : -1;
+            error += sign*(max + b*logTerm); // cost as in cost(qPos, qNeg, alpha)
+            slope += sign*((max + Math.signum(own-qOther)*qOther*(1-t)/(1+t))/qTot + alpha*logTerm); // tanh(d/(2b)) = (1-t)/(1+t) for d > 0
+         }
+         if (error == 0) {
+            return k;
+         }
+         if (error > 0) {
+            hi = k;
+         } else {
+            lo = k;
+         }
+         next = k - error/slope;
+         if (!(next > lo && next < hi) && lo > Double.NEGATIVE_INFINITY && hi < Double.POSITIVE_INFINITY) { // bisects once the root is bracketed, as solveQuantity
+            next = (lo+hi)/2;
+         } else if (!(slope > 0) || !(next > lo && next < hi)) {
+            break;
+         }
+         if (Math.abs(next-k) <= QUANTITY_TOLERANCE*Math.max(1, Math.abs(k))) {
+            return next;
+         }
+         k = next;
+      }
+      return solveQuantity(stock, target, pos, lastStock, k);
+   }
+
+   public void updateLiquidity(LMSRStock stock) { // b(q) at the outstanding stocks, for displays and recording and for the cached cost function
+      stock.liquiditySensitiveB(stock.getAlphaLS(), stock.getQPosLMSR(), stock.getQNegLMSR());
+   }
+}
@@ -0,0 +1,38 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+
+package ASMModel;
+
+/**
+ * Traders that forecast the event with the logit specification of LMSRStock, from the
+ * period and the two lagged probabilities, and hold their CARA demand. The forecast is the
+ * same for all of them and computed once per period, see LMSRStock.getLogitForecast.
+ */
+class LogitStrategy implements TradingStrategy {
+
+   public double getForecast(LMSRStock event, double offset) {
+      return event.getLogitForecast();
+   }
+
+   public void getForecasts(LMSRStock event, double[] offsets, double[] forecasts, int[] cohort) {
+      double forecast = event.getLogitForecast();
+      for (int k = 0; k < cohort.length; k++) {
+         forecasts[cohort[k]] = forecast;
+      }
+   }
+
+   public boolean isRiskAverse() {
+      return true;
+   }
+}
@@ -0,0 +1,147 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+
+package ASMModel;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import cern.jet.random.Normal;
+import cern.jet.random.engine.MersenneTwister;
+
+/**
+ * One of several independent binary markets traded in the same simulation. Each market
+ * has its own LMSRStock, Specialist and noise, and every agent of World.Agents holds a
+ * position in each of them. The first market is the one of World.LMSRStocks,
+ * AsmModel.specialist and World.Agents, which displays and recording show; the positions
+ * in the others are further Agent objects of the same owners.
+ *
+ * All markets clear at the same time on a fork-join pool. While clearing, a market only
+ * touches its own stock, specialist and positions, and the positions trade with the cash
+ * their owner had at the start of the period. What they spent is booked to the owners
+ * after all markets cleared, in market order, so results do not depend on the number of
+ * threads. The budget constraint holds within each market; an owner whose markets together
+ * spend more than its cash is held at MINCASH when its earnings are booked.
+ */
+class Market {
+
+   public static int numberOfMarkets = 1;   // more than one add independent markets to the one of World.LMSRStocks
+
+   private final LMSRStock stockLMSR;
+   private final Specialist specialist;
+   private final Agent[] positions;
+
+   Market() { // the market of World.LMSRStocks
+      stockLMSR = World.LMSRStocks;
+      specialist = AsmModel.specialist;
+      positions = World.Agents;
+   }
+
+   Market(int seed) { // a further market with the parameters of World.LMSRStocks and its own noise
+      stockLMSR = World.LMSRStocks.copyMarket(new Normal(0.0, 0.05, new MersenneTwister(seed)));
+      positions = new Agent[World.numberOfLMSRAgents];
+      specialist = new Specialist(stockLMSR, positions);
+      for (int j = 0; j < World.numberOfLMSRAgents; j++) {
+         positions[j] = World.Agents[j].openPosition(stockLMSR, specialist);
+      }
+   }
+
+   public LMSRStock getStockLMSR() {
+      return stockLMSR;
+   }
+   public Specialist getSpecialist() {
+      return specialist;
+   }
+   public Agent getPosition(int agent) {
+      return positions[agent];
+   }
+
+   static void clear(Market[] markets) { // one period of trading in all markets
+      Agent[] owners = World.Agents;
+      double[] cash = new double[World.numberOfLMSRAgents];
+      long[] cashUnits = new long[World.numberOfLMSRAgents];
+      for (int j = 0; j < World.numberOfLMSRAgents; j++) {
+         cash[j] = owners[j].cash;
+         cashUnits[j] = owners[j].cashUnits;
+      }
+      ForkJoinPool.commonPool().invoke(new Clearing(markets, cash, cashUnits, 0, markets.length));
+      for (int k = 1; k < markets.length; k++) {
+         markets[k].bookCash(owners, cash, cashUnits);
+      }
+   }
+
+   static void addPositions(Market[] markets, int agent, boolean payout) { // adds the positions of an agent in the further markets to its wealth
+      Agent owner = World.Agents[agent];
+      Agent position;
+      for (int k = 1; k < markets.length; k++) {
+         position = markets[k].positions[agent];
+         if (payout) {
+            position.setPayout();
+         } else {
+            position.getEarningsAndPayTaxes();
+         }
+         owner.wealth += position.wealth; // positions hold no cash between periods, so their wealth is the value of their stocks
+         owner.wealthUnits += position.wealthUnits;
+      }
+   }
+
+   private void clearMarket(double[] cash, long[] cashUnits) {
+      if (positions != World.Agents) {
+         for (int j = 0; j < positions.length; j++) {
+            positions[j].cash = cash[j];
+            positions[j].cashUnits = cashUnits[j];
+         }
+      }
+      stockLMSR.updateProbability();
+      specialist.adjustPricePrediction();
+   }
+
+   private void bookCash(Agent[] owners, double[] cash, long[] cashUnits) { // books what the positions spent to their owners
+      for (int j = 0; j < positions.length; j++) {
+         owners[j].cash += positions[j].cash - cash[j];
+         owners[j].cashUnits += positions[j].cashUnits - cashUnits[j];
+         if (AsmModel.fixedPointLedger) {
+            owners[j].cash = Ledger.toDouble(owners[j].cashUnits);
+         }
+         positions[j].cash = 0;
+         positions[j].cashUnits = 0;
+      }
+   }
+
+   private static class Clearing extends RecursiveAction { // clears markets[from..to-1], splitting them in halves
+      private static final long serialVersionUID = 1L;
+      private final Market[] markets;
+      private final double[] cash;
+      private final long[] cashUnits;
+      private final int from;
+      private final int to;
+
+      Clearing(Market[] markets, double[] cash, long[] cashUnits, int from, int to) {
+         this.markets = markets;
+         this.cash = cash;
+         this.cashUnits = cashUnits;
+         this.from = from;
+         this.to = to;
+      }
+
+      protected void compute() {
+         if (to-from == 1) {
+            markets[from].clearMarket(cash, cashUnits);
+            return;
+         }
+         int middle = (from+to)/2;
+         invokeAll(new Clearing(markets, cash, cashUnits, from, middle), new Clearing(markets, cash, cashUnits, middle, to));
+      }
+   }
+}
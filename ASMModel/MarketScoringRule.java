@@ -0,0 +1,168 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+package ASMModel;
+
+/**
+ * A cost function based automated market maker for the "Yes" and "No" stocks of an
+ * LMSRStock. The Specialist prices every order through this class, so a rule only has
+ * to provide its cost function and instantaneous price. The inverses, i.e., the order
+ * whose last stock costs a target price and the order that costs a given budget, are
+ * found with a bracketed Newton iteration unless the rule overrides them with a closed
+ * form. Both are taken before the rounding of Specialist.selectionMethod.
+ */
+public abstract class MarketScoringRule {
+
+   private static final int MAX_ITERATIONS = 100;
+   private static final double MAX_QUANTITY = 1e18;   // brackets beyond this are treated as unreachable
+   private static final double QUANTITY_TOLERANCE = 1e-12;
+
+   public MarketScoringRule() {
+   }
+
+   /** Cost of moving the outstanding stocks from (qPos,qNeg) to (qPosPost,qNegPost). */
+   public abstract double costDifference(LMSRStock stock, double qPos, double qNeg, double qPosPost, double qNegPost);
+
+   /** Instantaneous price of a "Yes" (pos) or "No" stock at the given outstanding stocks. */
+   public abstract double price(LMSRStock stock, double qPos, double qNeg, boolean pos);
+
+   public double orderCost(LMSRStock stock, double order, boolean pos) { // cost of buying (or selling, if negative) order stocks
+      if (pos) {
+         return costDifference(stock, stock.getQPosLMSR(), stock.getQNegLMSR(), stock.getQPosLMSR()+order, stock.getQNegLMSR());
+      } else {
+         return costDifference(stock, stock.getQPosLMSR(), stock.getQNegLMSR(), stock.getQPosLMSR(), stock.getQNegLMSR()+order);
+      }
+   }
+
+   public void orderCosts(LMSRStock stock, boolean pos, boolean buy, double[] costs, int n) { // costs of buying 1..n stocks, or of selling them if buy is false, into costs[0..n-1]
+      for (int k = 1; k <= n; k++) {
+         costs[k-1] = orderCost(stock, buy ? k : -k, pos);
+      }
+   }
+
+   public double price(LMSRStock stock, boolean pos) {
+      return price(stock, stock.getQPosLMSR(), stock.getQNegLMSR(), pos);
+   }
+
+   public double quantityForPrice(LMSRStock stock, double targetPrice, boolean pos) { // order whose last stock costs targetPrice
+      return solveQuantity(stock, targetPrice, pos, true);
+   }
+
+   public double quantityForCost(LMSRStock stock, double cost, boolean pos) { // order that costs exactly cost
+      return solveQuantity(stock, cost, pos, false);
+   }
+
+   public void updateLiquidity(LMSRStock stock) { // called before every agent trades, rules with a fixed liquidity do nothing
+   }
+
+   /**
+    * Solves orderCost(k) = target, or, if lastStock is true, orderCost(k)-orderCost(k-1) = target
+    * for k. Both sides increase with k, so the root is bracketed by doubling and then refined
+    * with Newton steps, falling back to bisection whenever a step leaves the bracket.
+    */
+   protected double solveQuantity(LMSRStock stock, double target, boolean pos, boolean lastStock) {
+      return solveQuantity(stock, target, pos, lastStock, 0);
+   }
+
+   /**
+    * The same, bracketing the root outwards from an estimate of it, e.g., the closed form of
+    * a similar rule, in steps that start at an eighth of the estimate and double.
+    */
+   protected double solveQuantity(LMSRStock stock, double target, boolean pos, boolean lastStock, double guess) {
+      double lo;
+      double hi;
+      double step = Math.max(1, Math.abs(guess)/8);
+      double k;
+      double next;
+      double error;
+
+      if (!(Math.abs(guess) < MAX_QUANTITY)) { // no usable estimate
+         guess = 0;
+         step = 1;
+      }
+      if (quantityValue(stock, guess, pos, lastStock) < target) {
+         lo = guess;
+         hi = guess + step;
+         while (quantityValue(stock, hi, pos, lastStock) < target) {
+            lo = hi;
+            step *= 2;
+            hi = guess == 0 ? step : hi + step;
+            if (hi > MAX_QUANTITY) {
+               return Double.POSITIVE_INFINITY;
+            }
+         }
+      } else {
+         hi = guess;
+         lo = guess - step;
+         while (quantityValue(stock, lo, pos, lastStock) > target) {
+            hi = lo;
+            step *= 2;
+            lo = guess == 0 ? -step : lo - step;
+            if (lo < -MAX_QUANTITY) {
+               return Double.NEGATIVE_INFINITY;
+            }
+         }
+      }
+
+      k = (lo+hi)/2;
+      for (int i = 0; i < MAX_ITERATIONS; i++) {
+         error = quantityValue(stock, k, pos, lastStock) - target;
+         if (error == 0) {
+            return k;
+         }
+         if (error > 0) {
+            hi = k;
+         } else {
+            lo = k;
+         }
+         next = k - error/quantitySlope(stock, k, pos, lastStock);
+         if (!(next > lo && next < hi)) { // Newton step left the bracket
+            next = (lo+hi)/2;
+         }
+         if (Math.abs(next-k) <= QUANTITY_TOLERANCE*Math.max(1, Math.abs(k))) {
+            return next;
+         }
+         k = next;
+      }
+      return k;
+   }
+
+   private double quantityValue(LMSRStock stock, double k, boolean pos, boolean lastStock) {
+      double qPos = stock.getQPosLMSR();
+      double qNeg = stock.getQNegLMSR();
+      double from = lastStock ? k-1 : 0;
+      if (pos) {
+         return costDifference(stock, qPos+from, qNeg, qPos+k, qNeg);
+      } else {
+         return costDifference(stock, qPos, qNeg+from, qPos, qNeg+k);
+      }
+   }
+
+   private double quantitySlope(LMSRStock stock, double k, boolean pos, boolean lastStock) { // derivative of quantityValue in k
+      double qPos = stock.getQPosLMSR();
+      double qNeg = stock.getQNegLMSR();
+      double slope;
+      if (pos) {
+         slope = price(stock, qPos+k, qNeg, true);
+         if (lastStock) {
+            slope -= price(stock, qPos+k-1, qNeg, true);
+         }
+      } else {
+         slope = price(stock, qPos, qNeg+k, false);
+         if (lastStock) {
+            slope -= price(stock, qPos, qNeg+k-1, false);
+         }
+      }
+      return slope;
+   }
+}
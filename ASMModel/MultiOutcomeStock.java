@@ -0,0 +1,197 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+package ASMModel;
+
+import cern.jet.random.Uniform;
+import cern.jet.random.engine.MersenneTwister;
+
+/**
+ * A market with numberOfOutcomes mutually exclusive outcomes, one stock per outcome, each
+ * paying one unit of cash if its outcome wins. Prices follow the LMSR with liquidity
+ * bLiq of World.LMSRStocks, C(q) = b*log(sum exp(q[i]/b)). The exp terms are kept relative to a
+ * shift and summed in a running total, so a trade updates one term and the sum, and every
+ * price expTerm[i]/sumExp, cost and inverse is O(1). The running total is compensated,
+ * i.e., the rounding error of every addition is carried along, so that selling most of a
+ * dominating outcome does not leave the small remaining sum with the error of the large
+ * one. It is recomputed from the terms after every numberOfOutcomes updates, at an
+ * amortized O(1), and whenever a term leaves the range where it can be represented.
+ *
+ * Outcome 0 has the probability of the binary LMSRStock, following its probability
+ * process and shock, and the other outcomes share the rest equally, so that two outcomes
+ * reproduce the "Yes"/"No" pair. The winner is drawn from these probabilities: a uniform
+ * draw, fixed when the market is created, picks the outcome whose interval of the
+ * cumulative probabilities holds it. Each outcome therefore wins with its probability at
+ * the last period, and the liabilities of earlier periods are those of the same draw at
+ * the probabilities of the period.
+ */
+public class MultiOutcomeStock extends Asset {
+
+   public static int numberOfOutcomes = 2;  // more than two replace the binary market by this one
+   private static final double MAX_TERM = 1e150;   // terms beyond these bounds are rescaled around a new shift
+   private static final double MIN_SUM = 1e-150;
+
+   private int outcomes;
+   private double[] quantity;       // outstanding stocks of each outcome
+   private double[] initialQuantity;
+   private double[] expTerm;        // exp((quantity[i]-shift)/b)
+   private double sumExp;           // running sum of expTerm, exact up to sumError
+   private double sumError;         // rounding errors of the additions to sumExp, still to be added to it
+   private double shift;
+   private double stateBLiq = Double.NaN; // bLiq the terms were computed with
+   private int updates = 0;         // trades since the sum was last recomputed
+   private final double draw;       // uniform draw that picks the winning outcome, see getWinningOutcome
+
+   public MultiOutcomeStock(int outcomes, int seed) { // the draw of the winner uses seed+1, the further markets and events are not traded with this one
+      this.outcomes = outcomes;
+      quantity = new double[outcomes];
+      initialQuantity = new double[outcomes];
+      expTerm = new double[outcomes];
+      draw = new Uniform(0, 1, new MersenneTwister(seed+1)).nextDouble();
+      recompute();
+   }
+
+   private void recompute() { // rescales all terms around the largest quantity and sums them again, O(n)
+      double b = World.LMSRStocks.getBLiq();
+      shift = quantity[0];
+      for (int i = 1; i < outcomes; i++) {
+         shift = Math.max(shift, quantity[i]);
+      }
+      sumExp = 0;
+      sumError = 0;
+      for (int i = 0; i < outcomes; i++) {
+         expTerm[i] = Math.exp((quantity[i]-shift)/b);
+         addToSum(expTerm[i]);
+      }
+      foldSum();
+      stateBLiq = b;
+      updates = 0;
+   }
+
+   private void addToSum(double value) { // adds value to sumExp and its exact rounding error to sumError
+      double sum = sumExp + value;
+      double valuePart = sum - sumExp;
+      sumError += (sumExp - (sum - valuePart)) + (value - valuePart);
+      sumExp = sum;
+   }
+
+   private void foldSum() { // adds sumError to sumExp and keeps what is lost in that addition in sumError
+      double sum = sumExp + sumError;
+      sumError -= sum - sumExp;
+      sumExp = sum;
+   }
+
+   private void checkState() { // bLiq belongs to World.LMSRStocks and may be set from the GUI without passing through this object
+      if (stateBLiq != World.LMSRStocks.getBLiq()) {
+         recompute();
+      }
+   }
+
+   protected void addQuantity(int outcome, double order) { // books an order of the market maker, O(1) amortized
+      double term;
+      checkState();
+      quantity[outcome] += order;
+      term = Math.exp((quantity[outcome]-shift)/stateBLiq); // one exp, as for exp(order/b), without compounding its error
+      updates++;
+      if (updates >= outcomes || !(term < MAX_TERM)) {
+         recompute();
+         return;
+      }
+      addToSum(term);
+      addToSum(-expTerm[outcome]);
+      expTerm[outcome] = term;
+      foldSum();
+      if (!(sumExp > MIN_SUM)) {
+         recompute();
+      }
+   }
+
+   protected void baseQuantities(double base) { // adds artificial initial stocks, outcome 0 is seeded so that its price is LMSRStock.initialPrice
+      double seed = World.LMSRStocks.getBLiq()*Math.log(LMSRStock.initialPrice*(outcomes-1)/(1-LMSRStock.initialPrice)); // price ratio of outcome 0 to each other outcome
+      for (int i = 0; i < outcomes; i++) {
+         quantity[i] = base;
+         if (i == 0 && seed > 0) {
+            quantity[i] += Math.round(seed);
+         } else if (i > 0 && seed < 0) {
+            quantity[i] += Math.round(-seed);
+         }
+         initialQuantity[i] = quantity[i];
+      }
+      recompute();
+   }
+
+   public int getNumberOfOutcomes() {
+      return outcomes;
+   }
+   public double getQuantity(int outcome) {
+      return quantity[outcome];
+   }
+   public double getInitialQuantity(int outcome) {
+      return initialQuantity[outcome];
+   }
+
+   public double getCostFunction() {
+      checkState();
+      return shift + stateBLiq*Math.log(sumExp);
+   }
+
+   public double getMarginalPrice(int outcome) { // instantaneous price, O(1)
+      checkState();
+      return expTerm[outcome]/sumExp;
+   }
+
+   private double getOtherPrice(int outcome) { // sum of the prices of all other outcomes, 1-price without its cancellation near 1
+      return Math.max(0, sumExp - expTerm[outcome])/sumExp;
+   }
+
+   protected double orderCost(int outcome, double order) { // cost of buying (or selling, if negative) order stocks of one outcome
+      checkState();
+      return LMSRCost.securityCost(expTerm[outcome]/sumExp, getOtherPrice(outcome), stateBLiq, order);
+   }
+
+   protected double quantityForPrice(int outcome, double targetPrice) { // order whose last stock costs exactly targetPrice, before any rounding
+      checkState();
+      return LMSRCost.securityQuantityForPrice(getMarginalPrice(outcome), getOtherPrice(outcome), stateBLiq, targetPrice);
+   }
+
+   protected double quantityForCost(int outcome, double cost) { // order that costs exactly cost, before any rounding
+      checkState();
+      return LMSRCost.securityQuantityForCost(getMarginalPrice(outcome), getOtherPrice(outcome), stateBLiq, cost);
+   }
+
+   public double getOutcomeProbability(int outcome) {
+      if (outcome == 0) {
+         return World.LMSRStocks.getProbability();
+      }
+      return (1-World.LMSRStocks.getProbability())/(outcomes-1);
+   }
+
+   public int getWinningOutcome() { // the outcome whose interval of the cumulative probabilities holds draw
+      double cumulative = 0;
+      for (int i = 0; i < outcomes-1; i++) {
+         cumulative += getOutcomeProbability(i);
+         if (draw < cumulative) {
+            return i;
+         }
+      }
+      return outcomes-1; // also takes what rounding leaves of the last interval
+   }
+
+   public void setResetOutcomes() {
+      for (int i = 0; i < outcomes; i++) {
+         quantity[i] = 0;
+         initialQuantity[i] = 0;
+      }
+      recompute();
+   }
+}
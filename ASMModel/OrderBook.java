@@ -0,0 +1,175 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+
+package ASMModel;
+
+import java.util.Arrays;
+
+/**
+ * Limit order book for the "Yes" or the "No" stock of a binary market, used when
+ * AsmModel.limitOrderBook is on. Prices are whole ticks of 1/TICKS between 1 and TICKS-1.
+ * Every price level keeps its resting orders in a FIFO list, so that orders at the same
+ * price fill in the order they arrived, and the best bid and ask are kept as levels,
+ * which makes both O(1). Orders are stored in primitive arrays indexed by their arrival
+ * and are day orders, the book is emptied before each period, so no order ever has to be
+ * removed from the middle of a list. Owners are indices into the traders of the period.
+ */
+class OrderBook {
+
+   static final int TICKS = 100;                 // price levels per unit of cash, i.e., cents
+   private static final int NONE = -1;
+   public static double quoteSize = 1;           // stocks agents quote at each side
+   public static int quoteSpread = 1;            // ticks between an agent's forecast and its quotes
+
+   private final boolean pos;                    // stock traded in this book
+   private final int[] bidHead = new int[TICKS]; // first and last resting order at every level
+   private final int[] bidTail = new int[TICKS];
+   private final int[] askHead = new int[TICKS];
+   private final int[] askTail = new int[TICKS];
+   private int bestBid;                          // highest level with a bid, 0 if there is none
+   private int bestAsk;                          // lowest level with an ask, TICKS if there is none
+   private double[] quantity = new double[64];   // stocks left in every order
+   private int[] owner = new int[64];
+   private int[] next = new int[64];             // next order at the same level, NONE at the tail
+   private int orders;
+   private Agent[] traders;
+
+   public OrderBook(boolean pos) {
+      this.pos = pos;
+      reset(null);
+   }
+
+   public void reset(Agent[] traders) { // drops every resting order
+      this.traders = traders;
+      Arrays.fill(bidHead, NONE);
+      Arrays.fill(askHead, NONE);
+      bestBid = 0;
+      bestAsk = TICKS;
+      orders = 0;
+   }
+
+   public int getBestBid() {
+      return bestBid;
+   }
+
+   public int getBestAsk() {
+      return bestAsk;
+   }
+
+   public void addBid(int trader, int tick, double stocks) { // a bid that crosses the best ask is filled against the asks first
+      if (tick <= 0 || tick >= TICKS) {
+         return;
+      }
+      stocks = Math.min(stocks, traders[trader].getAffordableStocks(tick));
+      if (bestAsk <= tick) {
+         stocks -= buy(traders[trader], stocks, tick);
+      }
+      if (!(stocks > 0)) {
+         return;
+      }
+      append(bidHead, bidTail, tick, trader, stocks);
+      bestBid = Math.max(bestBid, tick);
+   }
+
+   public void addAsk(int trader, int tick, double stocks) { // an ask that crosses the best bid is filled against the bids first
+      if (tick <= 0 || tick >= TICKS) {
+         return;
+      }
+      stocks = Math.min(stocks, traders[trader].getHoldings(pos));
+      if (bestBid >= tick) {
+         stocks -= sell(traders[trader], stocks, tick);
+      }
+      if (!(stocks > 0)) {
+         return;
+      }
+      append(askHead, askTail, tick, trader, stocks);
+      bestAsk = Math.min(bestAsk, tick);
+   }
+
+   private void append(int[] head, int[] tail, int tick, int trader, double stocks) {
+      if (orders == quantity.length) {
+         quantity = Arrays.copyOf(quantity, 2*orders);
+         owner = Arrays.copyOf(owner, 2*orders);
+         next = Arrays.copyOf(next, 2*orders);
+      }
+      quantity[orders] = stocks;
+      owner[orders] = trader;
+      next[orders] = NONE;
+      if (head[tick] == NONE) {
+         head[tick] = orders;
+      } else {
+         next[tail[tick]] = orders;
+      }
+      tail[tick] = orders;
+      orders++;
+   }
+
+   /**
+    * Buys up to order stocks for buyer from the asks at or below maxTick, best price first,
+    * and returns the number bought. Each fill is booked for both agents at the price of the
+    * resting order. Asks of sellers who no longer hold the stocks are cut to their holdings.
+    */
+   public double buy(Agent buyer, double order, int maxTick) {
+      double filled = 0;
+      double fill;
+      int k;
+      while (filled < order && bestAsk <= maxTick && bestAsk < TICKS) {
+         k = askHead[bestAsk];
+         fill = Math.min(Math.min(order-filled, quantity[k]), traders[owner[k]].getHoldings(pos));
+         if (fill > 0) {
+            buyer.executeBookFill(pos, fill, bestAsk);
+            traders[owner[k]].executeBookFill(pos, -fill, bestAsk);
+            filled += fill;
+         }
+         quantity[k] -= fill;
+         if (quantity[k] > 0 && traders[owner[k]].getHoldings(pos) > 0) {
+            continue; // the buyer is done
+         }
+         askHead[bestAsk] = next[k];
+         while (bestAsk < TICKS && askHead[bestAsk] == NONE) {
+            bestAsk++;
+         }
+      }
+      return filled;
+   }
+
+   /**
+    * Sells up to order stocks of seller to the bids at or above minTick, best price first,
+    * and returns the number sold. Bids of buyers who can no longer afford them are cut to
+    * the whole stocks their cash down to Agent.MINCASH still buys.
+    */
+   public double sell(Agent seller, double order, int minTick) {
+      double filled = 0;
+      double fill;
+      int k;
+      while (filled < order && bestBid >= minTick && bestBid > 0) {
+         k = bidHead[bestBid];
+         fill = Math.min(Math.min(order-filled, quantity[k]), traders[owner[k]].getAffordableStocks(bestBid));
+         if (fill > 0) {
+            traders[owner[k]].executeBookFill(pos, fill, bestBid);
+            seller.executeBookFill(pos, -fill, bestBid);
+            filled += fill;
+         }
+         quantity[k] -= fill;
+         if (quantity[k] > 0 && traders[owner[k]].getAffordableStocks(bestBid) > 0) {
+            continue; // the seller is done
+         }
+         bidHead[bestBid] = next[k];
+         while (bestBid > 0 && bidHead[bestBid] == NONE) {
+            bestBid--;
+         }
+      }
+      return filled;
+   }
+}
@@ -0,0 +1,94 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+
+package ASMModel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cern.jet.random.Exponential;
+import cern.jet.random.Uniform;
+import cern.jet.random.engine.MersenneTwister;
+
+/**
+ * The orders of agents that trade as asynchronous actors, see Specialist.CLEAR_ASYNC. At the
+ * period start the specialist broadcasts the market, i.e., fills the quotes and the market
+ * information, which the agents only read. Every agent then thinks on its own fork-join task
+ * and posts its order here, taking the next slot with a lock-free counter, and the specialist
+ * executes the orders one at a time. Each order reaches the market maker after a latency, an
+ * exponential waiting time whose mean is the agent's own, spread by latencyDispersion when the
+ * mailbox is created. With deterministicReplay, the specialist takes the orders in the order
+ * of their latencies, ties in agent order, so that a run gives the same results for any number
+ * of threads. Otherwise it takes them in the order the actors posted them, which depends on
+ * how the threads were scheduled.
+ */
+class OrderMailbox {
+
+   public static boolean deterministicReplay = true;
+   public static double latencyDispersion = 0.5;  // mean latencies are drawn from 1-latencyDispersion..1+latencyDispersion
+
+   private final double[] meanLatency;
+   private final double[] latency;             // of the orders of this period
+   private final int[] posted;                 // agents in the order they posted their orders
+   private final AtomicInteger received = new AtomicInteger();
+   private final EventQueue arrivals;          // orders by latency, used with deterministicReplay
+   private final Exponential waitingTime;
+   private boolean replay;                     // deterministicReplay when the period started
+   private int next;
+
+   OrderMailbox(int agents, int seed) {
+      MersenneTwister latencies = new MersenneTwister(seed);
+      double dispersion = Math.min(Math.max(latencyDispersion, 0), 1);
+      Uniform spread = new Uniform(1-dispersion, 1+dispersion, latencies);
+      meanLatency = new double[agents];
+      latency = new double[agents];
+      posted = new int[agents];
+      arrivals = new EventQueue(agents);
+      waitingTime = new Exponential(1.0, latencies);
+      for (int i = 0; i < agents; i++) {
+         meanLatency[i] = spread.nextDouble();
+      }
+   }
+
+   public void open() { // draws the latencies of this period in agent order, before the agents decide
+      for (int i = 0; i < latency.length; i++) {
+         latency[i] = meanLatency[i]*waitingTime.nextDouble(1.0);
+      }
+      received.set(0);
+      next = 0;
+      replay = deterministicReplay;
+   }
+
+   public void post(int agent) { // called by the actors, concurrently
+      posted[received.getAndIncrement()] = agent;
+   }
+
+   public void close() { // called after all agents decided
+      if (!replay) {
+         return;
+      }
+      for (int i = 0; i < latency.length; i++) {
+         arrivals.add(latency[i], i);
+      }
+   }
+
+   public int nextAgent() { // agent of the next order to execute
+      int agent;
+      if (!replay) {
+         return posted[next++];
+      }
+      agent = arrivals.getId();
+      arrivals.remove();
+      return agent;
+   }
+}
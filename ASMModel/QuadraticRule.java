@@ -0,0 +1,88 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+package ASMModel;
+
+/**
+ * Quadratic scoring rule, C(qPos,qNeg) = (qPos+qNeg)/2 + (qPos-qNeg)^2/(4b), with b taken
+ * from LMSRStock.getBLiq(). Its price 1/2+(qPos-qNeg)/(2b) would leave [0,1] once the
+ * stocks differ by more than b, so prices are held at 0 and 1 there and the cost function
+ * continues linearly. Written as C = qNeg + f(qPos-qNeg), every inverse is a square root
+ * on one of the three pieces of f.
+ */
+class QuadraticRule extends MarketScoringRule {
+
+   public QuadraticRule() {
+   }
+
+   private static double f(double d, double b) { // cost function less the quantity of the other stock
+      if (d <= -b) {
+         return -b/4;
+      } else if (d >= b) {
+         return d - b/4;
+      }
+      return d/2 + d*d/(4*b);
+   }
+
+   public double costDifference(LMSRStock stock, double qPos, double qNeg, double qPosPost, double qNegPost) {
+      double b = stock.getBLiq();
+      return (qNegPost - qNeg) + (f(qPosPost-qNegPost, b) - f(qPos-qNeg, b));
+   }
+
+   public double price(LMSRStock stock, double qPos, double qNeg, boolean pos) {
+      double d = pos ? qPos-qNeg : qNeg-qPos; // the rule is symmetric, so both stocks share the formula
+      return Math.min(1, Math.max(0, 0.5 + d/(2*stock.getBLiq())));
+   }
+
+   public double quantityForPrice(LMSRStock stock, double targetPrice, boolean pos) {
+      double b = stock.getBLiq();
+      double d = pos ? stock.getQPosLMSR()-stock.getQNegLMSR() : stock.getQNegLMSR()-stock.getQPosLMSR();
+      double x; // difference of the quantities after the order
+
+      if (!(targetPrice > 0)) { // every stock below -b is free, so there is no single order for these targets
+         return Double.NEGATIVE_INFINITY;
+      }
+      if (!(targetPrice < 1)) {
+         return Double.POSITIVE_INFINITY;
+      }
+      if (b < 1) { // the pieces overlap within a single stock, left to the numerical inverse
+         return super.quantityForPrice(stock, targetPrice, pos);
+      }
+      // the last stock costs f(x)-f(x-1), solved for x on the piece it falls into
+      if (targetPrice <= 1/(4*b)) {
+         x = -b + 2*Math.sqrt(b*targetPrice);
+      } else if (targetPrice >= 1 - 1/(4*b)) {
+         x = b + 1 - 2*Math.sqrt(b*(1-targetPrice));
+      } else {
+         x = b*(2*targetPrice-1) + 0.5;
+      }
+      return x - d;
+   }
+
+   public double quantityForCost(LMSRStock stock, double cost, boolean pos) {
+      double b = stock.getBLiq();
+      double d = pos ? stock.getQPosLMSR()-stock.getQNegLMSR() : stock.getQNegLMSR()-stock.getQPosLMSR();
+      double target = f(d, b) + cost; // value of f after the order
+      double x;
+
+      if (target < -b/4) { // selling every stock cannot bring in more than the stocks above -b are worth
+         return Double.NEGATIVE_INFINITY;
+      }
+      if (target <= 3*b/4) {
+         x = -b + 2*Math.sqrt(b*(b/4 + target));
+      } else {
+         x = target + b/4;
+      }
+      return x - d;
+   }
+}
@@ -0,0 +1,37 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+
+package ASMModel;
+
+/**
+ * Noise traders: each one sees the probability of the event plus its own noise, drawn
+ * every period, and holds its CARA demand.
+ */
+class RandomWalkStrategy implements TradingStrategy {
+
+   public double getForecast(LMSRStock event, double offset) {
+      return event.getProbability() + offset; // gets the real probability and adds own perception
+   }
+
+   public void getForecasts(LMSRStock event, double[] offsets, double[] forecasts, int[] cohort) {
+      double probability = event.getProbability();
+      for (int k = 0; k < cohort.length; k++) {
+         forecasts[cohort[k]] = probability + offsets[cohort[k]];
+      }
+   }
+
+   public boolean isRiskAverse() {
+      return true;
+   }
+}
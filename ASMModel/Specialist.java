@@ -14,75 +14,212 @@
 package ASMModel;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * The specialist handles market clearing.
  */
 class Specialist {
 
-   private static double[][] tradeMatrix;       // holds individual demands
+   private double[] demands;             // holds individual demands
    private LMSRStock stockLMSR;
-   public static double volumeNeg, volumePos;
-   public static double specialistRevenue = 0;
-   public static double specialistPayout = 0;
-   public static double specialistLiabilities = 0;
+   private Agent[] agents;               // agents trading in this market, null for World.Agents
+   public double volumeNeg, volumePos;
+   public double specialistRevenue = 0;
+   public double specialistPayout = 0;
+   public double specialistLiabilities = 0;
+   public long specialistRevenueUnits = 0;      // fixed-point ledger, in micro-units
+   public long specialistLiabilitiesUnits = 0;
    protected static final int SELECT_2DIGITS = 0;
    protected static final int SELECT_6DIGITS = 1;
    protected static final int SELECT_FLOAT = 2;
    public static int selectionMethod = SELECT_2DIGITS;
+   protected static final int SIZE_EXACT = 0;
+   protected static final int SIZE_ANALYTIC = 1;
+   public static int sizingMethod = SIZE_EXACT;
+   protected static final int RULE_LMSR = 0;
+   protected static final int RULE_QUADRATIC = 1;
+   protected static final int RULE_CONSTANT_PRODUCT = 2;
+   public static int ruleMethod = RULE_LMSR;
+   protected static final int CLEAR_SEQUENTIAL = 0;
+   protected static final int CLEAR_CALL_AUCTION = 1;
+   protected static final int CLEAR_SNAPSHOT = 2;
+   protected static final int CLEAR_CONTINUOUS = 3;  // agents trade at Poisson arrival times, see EventEngine
+   protected static final int CLEAR_ASYNC = 4;       // agents decide as actors and post their orders, see OrderMailbox
+   public static int clearingMethod = CLEAR_SEQUENTIAL;
+   static final int DECISION_BLOCK = 256;        // agents that decide on one thread when decisions run in parallel
+   private static final int MAX_AUCTION_STEPS = 200; // bisection steps of a call auction, see clearCallAuction
+   private static final double AUCTION_TOLERANCE = 1e-12;
+   public static boolean sparseActivation = true;  // agents that would not trade at the current quotes skip the order sizing, see getIdleSide
+   static final int ACTIVE = -1;                 // getIdleSide of an agent that has to size its order
+   private boolean collectingOrders = false;     // set while agents submit the orders of a call auction, see clearCallAuction
+   private OrderBook yesBook;                    // limit orders matched ahead of the market maker, null unless AsmModel.limitOrderBook is on
+   private OrderBook noBook;
+   private DemandSchedule yesSchedule;           // orders of a call auction, created by the first one
+   private DemandSchedule noSchedule;
+   private OrderMailbox mailbox;                 // orders of the asynchronous agents, null unless World.createMailboxes opened one
+   private MarketScoringRule scoringRule;       // prices every order, chosen by ruleMethod when the specialist is created
+   private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8};
+   private static final double MAX_EXACT_UNITS = 4503599627370496.0; // 2^52, below it the rounded cost is an exact long
+   private static final double SPLIT = 134217729.0; // 2^27+1, splits a double into two halves for exact products
+   private static final double PRICE_TOLERANCE = 1e-7; // bound on floating point error of an unrounded stock price
+   private static final int BINARY = -1;   // outcome of the binary "Yes"/"No" market in the order sizing methods
+   private static final int QUOTE_BUY_YES = 0;   // entries of quotes
+   private static final int QUOTE_SELL_YES = 1;
+   private static final int QUOTE_BUY_NO = 2;
+   private static final int QUOTE_SELL_NO = 3;   // -getLastPriceLMSR(1, false, false), which setDemand compares to 1-forecast
+   private static final int QUOTE_SELL_NO_FIRST = 4;
+   private static final int QUOTE_FREE_YES = 5;  // 1 if an order of 0 "Yes" stocks costs nothing, 0 otherwise
+   private static final int QUOTE_FREE_NO = 6;
+   private static final int QUOTE_SECOND_YES = 7; // unrounded price of the second "Yes" stock bought, see isZeroBuyOrder
+   private static final int QUOTE_SECOND_NO = 8;
+   private final double[] quotes = new double[9];   // first quotes at quotedQPos and quotedQNeg, NaN until asked for
+   private double quotedQPos = Double.NaN;          // outstanding stocks and liquidity of the quotes, NaN if they have to be recomputed
+   private double quotedQNeg;
+   private double quotedBLiq;
 
 
    public Specialist() { // constructor
+      this(World.LMSRStocks, null);
       World.numberOfAgents = World.numberOfLMSRAgents;
-      tradeMatrix = new double[World.numberOfAgents][2];
-      stockLMSR = World.LMSRStocks;
    }  // end of constructor
 
+   public Specialist(LMSRStock stock, Agent[] agents) { // market maker of one of several markets, see Market
+      demands = new double[World.numberOfLMSRAgents];
+      stockLMSR = stock;
+      this.agents = agents;
+      scoringRule = createScoringRule();
+      if (AsmModel.limitOrderBook) {
+         yesBook = new OrderBook(true);
+         noBook = new OrderBook(false);
+      }
+   }
+
+   private static MarketScoringRule createScoringRule() {
+      switch(ruleMethod){
+         case RULE_QUADRATIC:
+            return new QuadraticRule();
+         case RULE_CONSTANT_PRODUCT:
+            return new ConstantProductRule();
+         default: // LS-LMSR is the logarithmic rule with a liquidity that grows with the outstanding stocks
+            if (AsmModel.LS_LMSR) {
+               return new LiquiditySensitiveRule();
+            }
+            return new LMSRRule();
+      }
+   }
+
+   public MarketScoringRule getScoringRule() {
+      return scoringRule;
+   }
+
    public double getCostLMSR(double order, boolean pos) { // calculates cost function, used for price setting
-      double costFunction;
-      double costFunctionPost;
       double orderCost;
-      double orderPos;
-      double orderNeg;
-      stockLMSR = World.LMSRStocks;
+      orderCost = scoringRule.orderCost(stockLMSR, order, pos);
+      return roundSelected(orderCost, order > 0); // rounds the cost up when buying and down when selling
+   }
 
-      if (pos) {
-         orderNeg = 0;
-         orderPos = order;
-      } else {
-         orderNeg = order;
-         orderPos = 0;
-      }
+   public long getCostUnitsLMSR(double order, boolean pos) { // cost of an order in micro-units, used by the fixed-point ledger
+      double orderCost;
+      orderCost = scoringRule.orderCost(stockLMSR, order, pos);
+      return roundSelectedUnits(orderCost, order > 0);
+   }
+
+   public double getCostAuctionLMSR(double order, double price) { // cost of an order filled in a call auction at the average price of its stock
+      return roundSelected(order*price, order > 0);
+   }
 
-      costFunction = stockLMSR.getBLiq()*Math.log(Math.exp((stockLMSR.getQPosLMSR())/stockLMSR.getBLiq())+Math.exp((stockLMSR.getQNegLMSR())/stockLMSR.getBLiq()));
-      costFunctionPost = stockLMSR.getBLiq()*Math.log(Math.exp((stockLMSR.getQPosLMSR()+orderPos)/stockLMSR.getBLiq())+Math.exp((stockLMSR.getQNegLMSR()+orderNeg)/stockLMSR.getBLiq()));
-      orderCost = costFunctionPost - costFunction;
+   public long getCostUnitsAuctionLMSR(double order, double price) {
+      return roundSelectedUnits(order*price, order > 0);
+   }
 
+   public double getCostOutcomeLMSR(int outcome, double order) { // getCostLMSR for one outcome of the n-outcome market, or one pattern of the combinatorial market
+      return roundSelected(outcomeCost(outcome, order), order > 0);
+   }
+
+   public long getCostUnitsOutcomeLMSR(int outcome, double order) {
+      return roundSelectedUnits(outcomeCost(outcome, order), order > 0);
+   }
+
+   private static double outcomeCost(int outcome, double order) {
+      if (World.combinatorialStock != null) {
+         return World.combinatorialStock.orderCost(outcome, order);
+      }
+      return World.outcomeStock.orderCost(outcome, order);
+   }
+
+   private static double roundSelected(double cost, boolean up) { // rounds a cost as set by the market maker method
       switch(selectionMethod){
          case SELECT_2DIGITS: // rounds to nearest two digits
-            if (order > 0) { // rounds the cost up when buying and down when selling
-               BigDecimal bd = new BigDecimal(orderCost).setScale(2, BigDecimal.ROUND_UP);
-               orderCost = bd.doubleValue();
-            } else {
-               BigDecimal bd = new BigDecimal(orderCost).setScale(2, BigDecimal.ROUND_DOWN);
-               orderCost = bd.doubleValue();
-            }
-            break;
+            return roundCost(cost, 2, up);
          case SELECT_6DIGITS: // rounds to nearest six digits
-            if (order > 0) { // rounds the cost up when buying and down when selling
-               BigDecimal bd = new BigDecimal(orderCost).setScale(6, BigDecimal.ROUND_UP);
-               orderCost = bd.doubleValue();
-            } else {
-               BigDecimal bd = new BigDecimal(orderCost).setScale(6, BigDecimal.ROUND_DOWN);
-               orderCost = bd.doubleValue();
-            }
-            break;
-         case SELECT_FLOAT: // uses float values
-            break;
+            return roundCost(cost, 6, up);
+         default: // uses float values
+            return cost;
       }
+   }
 
+   private static long roundSelectedUnits(double cost, boolean up) {
+      if (selectionMethod == SELECT_2DIGITS) { // rounded to cents exactly as getCostLMSR does, then converted without error
+         return roundCostUnits(cost, 2, up)*(Ledger.UNITS/100);
+      }
+      return roundCostUnits(cost, Ledger.DIGITS, up); // floats are rounded to whole micro-units, up when buying and down when selling
+   }
 
-      return orderCost;
+   /**
+    * Rounds a cost to the given number of decimal digits, away from zero if up is true and
+    * towards zero otherwise. The result is the same double as
+    * new BigDecimal(cost).setScale(digits, ROUND_UP or ROUND_DOWN).doubleValue(), but no
+    * objects are created as long as |cost|*10^digits is below 2^52, i.e., for costs up to
+    * 4.5e13 with two digits and 4.5e9 with six digits. Larger costs, NaN and infinities
+    * are passed on to BigDecimal.
+    */
+   static strictfp double roundCost(double cost, int digits, boolean up) {
+      if (!(Math.abs(cost)*POWERS_OF_TEN[digits] < MAX_EXACT_UNITS)) {
+         return new BigDecimal(cost).setScale(digits, up ? BigDecimal.ROUND_UP : BigDecimal.ROUND_DOWN).doubleValue();
+      }
+      return roundCostUnits(cost, digits, up)/POWERS_OF_TEN[digits]; // BigDecimal.doubleValue() divides the unscaled value by the same power of ten
+   }
+
+   static strictfp long roundCostUnits(double cost, int digits, boolean up) { // the same rounding, returned as a whole number of 10^-digits units
+      double scale = POWERS_OF_TEN[digits];
+      double magnitude = Math.abs(cost);
+      double scaled = magnitude*scale;
+      double scaledError;
+      double units;
+      long roundedUnits;
+
+      if (!(scaled < MAX_EXACT_UNITS)) {
+         return new BigDecimal(cost).setScale(digits, up ? BigDecimal.ROUND_UP : BigDecimal.ROUND_DOWN).unscaledValue().longValueExact();
+      }
+      scaledError = productError(magnitude, scale, scaled); // magnitude*scale is exactly scaled+scaledError
+      units = Math.floor(scaled);
+      if (units == scaled) { // the rounding error of the product decides on which side of the integer the exact value lies
+         if (up && scaledError > 0) {
+            units++;
+         } else if (!up && scaledError < 0) {
+            units--;
+         }
+      } else if (up) { // scaled is at least one ulp away from an integer, more than scaledError can bridge
+         units++;
+      }
+      roundedUnits = (long) units;
+      if (cost < 0) {
+         roundedUnits = -roundedUnits;
+      }
+      return roundedUnits;
+   }
+
+   private static strictfp double productError(double a, double b, double product) { // Dekker's exact product: a*b - product without rounding
+      double t = SPLIT*a;
+      double aHigh = t - (t-a);
+      double aLow = a - aHigh;
+      t = SPLIT*b;
+      double bHigh = t - (t-b);
+      double bLow = b - bHigh;
+      return ((aHigh*bHigh - product) + aHigh*bLow + aLow*bHigh) + aLow*bLow;
    }
 
    public double getLastPriceLMSR(double order, boolean pos, boolean buy) { // calculates price of the last stock in an order
@@ -95,33 +232,231 @@ class Specialist {
       return priceStock;
    }
 
-   public void adjustPricePrediction() { // price adjustment for LMSR, determined by cost function
-      Agent agent;
-      double priceLMSR = 0;
-      double priceYesLMSR = 0;
-      double priceNoLMSR = 0;
+   public double getLastPriceOutcomeLMSR(int outcome, double order, boolean buy) { // getLastPriceLMSR for one outcome of the n-outcome market
+      if (buy) {
+         return getCostOutcomeLMSR(outcome, order) - getCostOutcomeLMSR(outcome, order-1);
+      } else {
+         return getCostOutcomeLMSR(outcome, order-1) - getCostOutcomeLMSR(outcome, order);
+      }
+   }
+
+   /**
+    * Quote ladder for orders of 1..n stocks in one pass: costs[k-1] is getCostLMSR(k, pos),
+    * or getCostLMSR(-k, pos) if buy is false, and prices[k-1] is what the k-th stock costs,
+    * or brings in when sold, i.e., getLastPriceLMSR(k, pos, true) for buy orders. prices may
+    * be null. The scoring rule advances the exp term by exp(1/b) per stock, see orderCosts,
+    * which is within PRICE_TOLERANCE of the cost function but not always the same double.
+    * Rounding to cents or micro-units absorbs that difference except near a unit, so only
+    * the entries that close to a rounding tie, and every entry with float values, are
+    * evaluated by getCostLMSR, and the ladder quotes exactly what executing the order charges.
+    */
+   public void getQuoteLadderLMSR(boolean pos, boolean buy, double[] costs, double[] prices, int n) {
+      double costPrev = 0;
+      double order;
+      scoringRule.orderCosts(stockLMSR, pos, buy, costs, n);
+      for (int k = 0; k < n; k++) {
+         order = buy ? k+1 : -(k+1);
+         if (nearRoundingTie(costs[k])) {
+            costs[k] = getCostLMSR(order, pos);
+         } else {
+            costs[k] = roundSelected(costs[k], buy);
+         }
+         if (prices != null) {
+            prices[k] = buy ? costs[k] - costPrev : costPrev - costs[k];
+         }
+         costPrev = costs[k];
+      }
+   }
 
-      stockLMSR = World.LMSRStocks;
+   private static boolean nearRoundingTie(double cost) { // true if cost is within PRICE_TOLERANCE of a value where roundSelected changes its result
+      double scaled;
+      switch(selectionMethod){
+         case SELECT_2DIGITS:
+            scaled = cost*POWERS_OF_TEN[2];
+            return !(Math.abs(scaled - Math.rint(scaled)) > PRICE_TOLERANCE*POWERS_OF_TEN[2]);
+         case SELECT_6DIGITS:
+            scaled = cost*POWERS_OF_TEN[6];
+            return !(Math.abs(scaled - Math.rint(scaled)) > PRICE_TOLERANCE*POWERS_OF_TEN[6]);
+         default: // float values are charged unrounded, so no difference is absorbed
+            return true;
+      }
+   }
 
-      for (int i = 0 ; i < World.numberOfLMSRAgents ; i++) {
-         if (AsmModel.LS_LMSR) {
-            stockLMSR.liquiditySensitiveB(stockLMSR.getAlphaLS(), stockLMSR.getQPosLMSR(), stockLMSR.getQNegLMSR());
-            // System.out.println("BLS: " + stockLMSR.getBLiq());
+   public double getBuyOrderLMSR(double targetPrice, boolean pos, double maxOrder) { // order reached by buying one stock at a time while the last one costs less than targetPrice, up to maxOrder
+      return getBuyOrder(targetPrice, BINARY, pos, maxOrder);
+   }
+
+   public double getBuyOrderOutcomeLMSR(double targetPrice, int outcome, double maxOrder) {
+      return getBuyOrder(targetPrice, outcome, true, maxOrder);
+   }
+
+   private double getBuyOrder(double targetPrice, int outcome, boolean pos, double maxOrder) { // outcome is BINARY for the "Yes" (pos) or "No" stock
+      double maxShares;
+      double order;
+      double cost;
+      double costPrev;
+
+      if (maxOrder > 0) { // buying stops at the first order that is not below maxOrder
+         maxShares = Math.ceil(maxOrder);
+      } else {
+         return 0;
+      }
+
+      if (sizingMethod == SIZE_ANALYTIC) { // unrounded inverse of the scoring rule, ignores the rounding of the market maker method
+         order = Math.ceil(quoteQuantityForPrice(targetPrice, outcome, pos));
+         if (!(order > 1)) { // the first stock already costs targetPrice
+            return 0;
          }
-         agent = World.Agents[i];
-         priceLMSR = getCostLMSR(1, true) - getCostLMSR(0, true);
-         stockLMSR.setPrice(priceLMSR);
-         agent.setDemandAndSlope();
-         if (agent.pos) {
-            tradeMatrix[i][0] = agent.getDemand();
-            volumePos += tradeMatrix[i][0];
-            stockLMSR.setTradingVolumeYes(volumePos);
-         } else {
-            tradeMatrix[i][0] = agent.getDemand();
-            volumeNeg += tradeMatrix[i][0];
-            stockLMSR.setTradingVolumeNo(volumeNeg);
+         return Math.min(order, maxShares);
+      }
+
+      // every stock below this order costs less than targetPrice even after rounding, so only a few orders around the analytic solution are priced
+      order = Math.max(1, Math.ceil(quoteQuantityForPrice(targetPrice - getRoundingTolerance(), outcome, pos)) - 1);
+      if (order >= maxShares) {
+         return maxShares;
+      }
+      costPrev = quoteCost(order-1, outcome, pos);
+      while (true) {
+         cost = quoteCost(order, outcome, pos);
+         if (!(targetPrice > cost - costPrev)) { // same price as getLastPriceLMSR(order, pos, true)
+            if (order == 1) { // not even the first stock is bought
+               return 0;
+            }
+            return order;
          }
-      }  // while
+         order++;
+         if (order >= maxShares) {
+            return maxShares;
+         }
+         costPrev = cost;
+      }
+   }
+
+   public double getSellOrderLMSR(double targetPrice, boolean pos, double holdings) { // order reached by selling one stock at a time while the last one is worth more than targetPrice, up to all holdings
+      return getSellOrder(targetPrice, BINARY, pos, holdings);
+   }
+
+   public double getSellOrderOutcomeLMSR(double targetPrice, int outcome, double holdings) {
+      return getSellOrder(targetPrice, outcome, true, holdings);
+   }
+
+   private double getSellOrder(double targetPrice, int outcome, boolean pos, double holdings) {
+      double maxShares;
+      double order;
+      double cost;
+      double costNext;
+
+      if (holdings > 0) { // selling stops when all holdings are sold
+         maxShares = Math.ceil(holdings);
+      } else {
+         return 0;
+      }
+
+      if (sizingMethod == SIZE_ANALYTIC) { // unrounded inverse of the scoring rule, ignores the rounding of the market maker method
+         order = Math.min(-1, Math.floor(quoteQuantityForPrice(targetPrice, outcome, pos)));
+         if (!(order > -maxShares)) {
+            return -maxShares;
+         }
+         return order;
+      }
+
+      // every stock above this order is worth more than targetPrice even after rounding, so only a few orders around the analytic solution are priced
+      order = Math.min(-1, Math.floor(quoteQuantityForPrice(targetPrice + getRoundingTolerance(), outcome, pos)) + 1);
+      if (-order >= maxShares) {
+         return -maxShares;
+      }
+      cost = quoteCost(order, outcome, pos);
+      while (true) {
+         costNext = quoteCost(order-1, outcome, pos);
+         if (!(cost - costNext > targetPrice)) { // same price as -getLastPriceLMSR(order, pos, false)
+            return order;
+         }
+         order--;
+         if (-order >= maxShares) {
+            return -maxShares;
+         }
+         cost = costNext;
+      }
+   }
+
+   public double getAffordableOrderLMSR(double order, boolean pos, double budget) { // largest order, counting down from the given one, whose cost does not exceed budget
+      return getAffordableOrder(order, BINARY, pos, budget);
+   }
+
+   public double getAffordableOrderOutcomeLMSR(double order, int outcome, double budget) {
+      return getAffordableOrder(order, outcome, true, budget);
+   }
+
+   private double getAffordableOrder(double order, int outcome, boolean pos, double budget) {
+      double maxOrder;
+
+      if (!(quoteCost(order, outcome, pos) > budget)) {
+         return order;
+      }
+      // rounding never lowers a cost (up when buying, towards zero when selling), so no order above the analytic one fits
+      maxOrder = Math.floor(quoteQuantityForCost(budget, outcome, pos)) + 1;
+      if (maxOrder < order - 1) {
+         order = maxOrder;
+      } else {
+         order--;
+      }
+      while (quoteCost(order, outcome, pos) > budget) {
+         order--;
+      }
+      return order;
+   }
+
+   private double quoteCost(double order, int outcome, boolean pos) {
+      if (outcome == BINARY) {
+         return getCostLMSR(order, pos);
+      }
+      return getCostOutcomeLMSR(outcome, order);
+   }
+
+   private double quoteQuantityForPrice(double targetPrice, int outcome, boolean pos) {
+      if (outcome == BINARY) {
+         return scoringRule.quantityForPrice(stockLMSR, targetPrice, pos);
+      }
+      if (World.combinatorialStock != null) {
+         return World.combinatorialStock.quantityForPrice(outcome, targetPrice);
+      }
+      return World.outcomeStock.quantityForPrice(outcome, targetPrice);
+   }
+
+   private double quoteQuantityForCost(double cost, int outcome, boolean pos) {
+      if (outcome == BINARY) {
+         return scoringRule.quantityForCost(stockLMSR, cost, pos);
+      }
+      if (World.combinatorialStock != null) {
+         return World.combinatorialStock.quantityForCost(outcome, cost);
+      }
+      return World.outcomeStock.quantityForCost(outcome, cost);
+   }
+
+   private double getRoundingTolerance() { // largest difference between a rounded and an unrounded stock price
+      switch(selectionMethod){
+         case SELECT_2DIGITS:
+            return 0.01 + PRICE_TOLERANCE;
+         case SELECT_6DIGITS:
+            return 0.000001 + PRICE_TOLERANCE;
+         default:
+            return PRICE_TOLERANCE;
+      }
+   }
+
+   public void adjustPricePrediction() { // price adjustment for LMSR, determined by cost function
+      if (agents == null && World.population != null) {
+         tradePopulation(World.population);
+      } else {
+         tradeAgents(getAgents());
+      }
+      setPeriodPrices();
+   }  // adjustPricePrediction
+
+   void setPeriodPrices() { // prices at the end of the period's trading
+      double priceYesLMSR = 0;
+      double priceNoLMSR = 0;
+
       priceYesLMSR = getCostLMSR(1, true) - getCostLMSR(0, true);
       priceNoLMSR = getCostLMSR(1, false) - getCostLMSR(0, false);
       stockLMSR.setPriceSum(priceYesLMSR + priceNoLMSR);
@@ -130,29 +465,543 @@ class Specialist {
 //      if (stockLMSR.getLiquiditySensitive()) {
 //         System.out.println("BLS: " + stockLMSR.getBLiq());
 //      }
-   }  // adjustPricePrediction
+   }
+
+   private void tradeAgents(Agent[] traders) { // one period of trading of all agents, as set by clearingMethod
+      OrderMailbox orders = getMailbox();
+      Agent agent;
+      int i;
+
+      quotedQPos = Double.NaN; // settings may have changed between periods
+      if (yesBook != null) { // limit orders last one period
+         yesBook.reset(traders);
+         noBook.reset(traders);
+      }
+      if (clearingMethod == CLEAR_CALL_AUCTION || clearingMethod == CLEAR_SNAPSHOT || clearingMethod == CLEAR_ASYNC) { // all agents decide on the outstanding stocks of the period start
+         decideOnSnapshot(traders);
+      }
+      if (collectingOrders) { // the call auction fills the orders before they are recorded
+         collectingOrders = false;
+         clearCallAuction(traders);
+      }
+      for (int k = 0 ; k < World.numberOfLMSRAgents ; k++) {
+         i = orders == null ? k : orders.nextAgent();
+         agent = traders[i];
+         if (clearingMethod == CLEAR_SEQUENTIAL || clearingMethod == CLEAR_CONTINUOUS) { // continuous clearing is sequential where EventEngine does not support the settings
+            quoteBeforeTrade();
+            agent.setDemandAndSlope();
+         } else if (clearingMethod == CLEAR_SNAPSHOT || clearingMethod == CLEAR_ASYNC) { // orders are executed one after the other in agent order, or as they reach the mailbox
+            agent.commitOrder();
+         }
+         if (yesBook != null && clearingMethod != CLEAR_CALL_AUCTION) {
+            agent.setQuotes(i);
+         }
+         demands[i] = agent.getDemand();
+         addVolume(demands[i], agent.pos);
+      }  // while
+   }  // tradeAgents
+
+   private void tradePopulation(AgentPopulation population) { // tradeAgents for agents kept in columns, with sequential, snapshot or asynchronous clearing
+      OrderMailbox orders = getMailbox();
+      boolean snapshot = clearingMethod == CLEAR_SNAPSHOT || clearingMethod == CLEAR_ASYNC;
+      int i;
+
+      quotedQPos = Double.NaN;
+      if (snapshot) {
+         decideOnSnapshot(null);
+      } else { // the forecasts only depend on the period, so they are set before the agents trade
+         population.setForecasts();
+      }
+      for (int k = 0 ; k < population.size ; k++) {
+         i = orders == null ? k : orders.nextAgent();
+         if (snapshot) {
+            population.commitOrder(i, this);
+         } else {
+            quoteBeforeTrade();
+            population.setDemand(i, this);
+         }
+         demands[i] = population.order[i];
+         addVolume(demands[i], population.pos[i]);
+      }
+   }  // tradePopulation
+
+   void startArrivals() { // called by EventEngine before the arrivals of a period, settings may have changed between periods
+      quotedQPos = Double.NaN;
+   }
+
+   void tradeArrival(int i) { // agent i trades at the outstanding stocks it arrives at, see EventEngine
+      AgentPopulation population = World.population;
+      Agent agent;
+
+      quoteBeforeTrade();
+      if (population != null) {
+         population.setForecast(i);
+         population.setDemand(i, this);
+         demands[i] = population.order[i];
+         addVolume(demands[i], population.pos[i]);
+      } else {
+         agent = World.Agents[i];
+         agent.setDemandAndSlope();
+         demands[i] = agent.getDemand();
+         addVolume(demands[i], agent.pos);
+      }
+   }
+
+   private void addVolume(double demand, boolean pos) {
+      if (pos) {
+         volumePos += demand;
+         stockLMSR.setTradingVolumeYes(volumePos);
+      } else {
+         volumeNeg += demand;
+         stockLMSR.setTradingVolumeNo(volumeNeg);
+      }
+   }
+
+   private void quoteBeforeTrade() { // sets the liquidity and the price of a "Yes" stock for the next agent
+      if (!sparseActivation || !isQuoted()) { // with the quotes unchanged since the last agent, so are b and the price
+         scoringRule.updateLiquidity(stockLMSR); // LS-LMSR recomputes b from the outstanding stocks
+      }
+      // System.out.println("BLS: " + stockLMSR.getBLiq());
+      if (sparseActivation) {
+         stockLMSR.setPrice(getQuote(QUOTE_BUY_YES)); // same as getCostLMSR(1, true) - getCostLMSR(0, true)
+      } else {
+         stockLMSR.setPrice(getCostLMSR(1, true) - getCostLMSR(0, true));
+      }
+   }
+
+   private boolean isQuoted() { // whether quotes are those of the current outstanding stocks and liquidity
+      return quotedQPos == stockLMSR.getQPosLMSR() && quotedQNeg == stockLMSR.getQNegLMSR() && quotedBLiq == stockLMSR.getBLiq();
+   }
+
+   private double getQuote(int quote) { // one of the first quotes at the current outstanding stocks, computed when first asked for
+      if (!isQuoted()) {
+         Arrays.fill(quotes, Double.NaN);
+         quotedQPos = stockLMSR.getQPosLMSR();
+         quotedQNeg = stockLMSR.getQNegLMSR();
+         quotedBLiq = stockLMSR.getBLiq();
+      }
+      if (Double.isNaN(quotes[quote])) {
+         switch (quote) {
+            case QUOTE_BUY_YES:
+               quotes[quote] = getLastPriceLMSR(1, true, true);
+               break;
+            case QUOTE_SELL_YES:
+               quotes[quote] = -getLastPriceLMSR(0, true, false);
+               break;
+            case QUOTE_BUY_NO:
+               quotes[quote] = getLastPriceLMSR(1, false, true);
+               break;
+            case QUOTE_SELL_NO:
+               quotes[quote] = -getLastPriceLMSR(1, false, false);
+               break;
+            case QUOTE_SELL_NO_FIRST:
+               quotes[quote] = -getLastPriceLMSR(0, false, false);
+               break;
+            case QUOTE_SECOND_YES:
+            case QUOTE_SECOND_NO:
+               boolean second = quote == QUOTE_SECOND_YES;
+               quotes[quote] = scoringRule.orderCost(stockLMSR, 2, second) - scoringRule.orderCost(stockLMSR, 1, second);
+               break;
+            default:
+               boolean pos = quote == QUOTE_FREE_YES;
+               quotes[quote] = getCostLMSR(0, pos) == 0 && getCostUnitsLMSR(0, pos) == 0 ? 1 : 0;
+               break;
+         }
+      }
+      return quotes[quote];
+   }
+
+   /**
+    * Whether an agent with the given forecast and holdings would end Agent.setDemand with an
+    * order of 0, found with the comparisons setDemand makes against the first quotes, which
+    * are shared by all agents until an order moves them, but without sizing an order. Returns
+    * ACTIVE if the agent may trade, otherwise 1 or 0 for the "Yes" or "No" stock setDemand
+    * leaves in pos. In a quiet market most agents are idle and only cost these comparisons.
+    */
+   int getIdleSide(double forecast, double posStocks, double negStocks, double budget, boolean riskAverse, double divisor) {
+      double maxOrder;
+      int side;
+      if (!sparseActivation || yesBook != null) { // resting limit orders may fill even an order of 0
+         return ACTIVE;
+      }
+      if (forecast > getQuote(QUOTE_BUY_YES)) {
+         if (negStocks == 0) {
+            if (riskAverse) {
+               maxOrder = (((forecast-(World.interestRatep1*getQuote(QUOTE_BUY_YES))))/(divisor) - posStocks);
+            } else {
+               maxOrder = Double.POSITIVE_INFINITY;
+            }
+            if (!isZeroBuyOrder(forecast, true, maxOrder)) { // buys "Yes" stocks
+               return ACTIVE;
+            }
+            side = 1;
+         } else if (getQuote(QUOTE_SELL_NO) > 1-forecast) { // sells "No" stocks
+            return ACTIVE;
+         } else {
+            side = 0;
+         }
+      } else if (posStocks == 0) {
+         if (riskAverse) {
+            maxOrder = ((((1-forecast)-(World.interestRatep1*getQuote(QUOTE_BUY_NO))))/(divisor) - negStocks);
+         } else {
+            maxOrder = Double.POSITIVE_INFINITY;
+         }
+         if (!isZeroBuyOrder(1-forecast, false, maxOrder)) { // buys "No" stocks
+            return ACTIVE;
+         }
+         side = 0;
+      } else {
+         if (forecast < getQuote(QUOTE_SELL_YES)) { // sells "Yes" stocks
+            return ACTIVE;
+         }
+         side = 1;
+      }
+      if (!isFreeOrder(side == 1)) {
+         return ACTIVE;
+      }
+      if (riskAverse && 0 > budget) { // constrainDemand would turn the order of 0 into a sale
+         return ACTIVE;
+      }
+      return side;
+   }
+
+   public double getFirstPriceLMSR(boolean pos, boolean buy) { // getLastPriceLMSR(1, pos, true) when buying, -getLastPriceLMSR(0, pos, false) when selling, shared by agents until an order moves the quotes
+      if (!sparseActivation) {
+         return buy ? getLastPriceLMSR(1, pos, true) : -getLastPriceLMSR(0, pos, false);
+      }
+      if (buy) {
+         return getQuote(pos ? QUOTE_BUY_YES : QUOTE_BUY_NO);
+      }
+      return getQuote(pos ? QUOTE_SELL_YES : QUOTE_SELL_NO_FIRST);
+   }
+
+   boolean isFreeOrder(boolean pos) { // whether executing an order of 0 stocks leaves agent, stock and specialist as they are
+      return sparseActivation && yesBook == null && getQuote(pos ? QUOTE_FREE_YES : QUOTE_FREE_NO) == 1;
+   }
+
+   private boolean isZeroBuyOrder(double targetPrice, boolean pos, double maxOrder) { // whether getBuyOrderLMSR(targetPrice, pos, maxOrder) is 0, taking the same steps up to its first quote
+      if (!(maxOrder > 0)) {
+         return true;
+      }
+      if (sizingMethod == SIZE_ANALYTIC) {
+         return !(Math.ceil(quoteQuantityForPrice(targetPrice, BINARY, pos)) > 1);
+      }
+      if (targetPrice > getQuote(pos ? QUOTE_BUY_YES : QUOTE_BUY_NO) || !(1 < Math.ceil(maxOrder))) { // the first stock is bought
+         return false;
+      }
+      // getBuyOrder starts at max(1, ceil(quantityForPrice(targetPrice - tolerance)) - 1), which is 1 if the second stock costs at least that target
+      return getQuote(pos ? QUOTE_SECOND_YES : QUOTE_SECOND_NO) >= targetPrice - getRoundingTolerance();
+   }
+
+
+   /**
+    * Decision phase of the call auction, of snapshot and of asynchronous clearing. The noise of every agent is
+    * drawn first, in agent order, then all agents compute their orders in parallel on the
+    * fork-join pool while executeOrder only records them. Nothing is traded until all have
+    * decided, so every agent sees the same market, and the caches of the scoring rule and the
+    * stock are filled for it before the pool starts, so that the agents only read them. The
+    * call auction keeps collecting orders afterwards, snapshot clearing commits them in agent
+    * order, and asynchronous clearing in the order in which OrderMailbox hands them out.
+    */
+   private void decideOnSnapshot(Agent[] traders) { // traders is null for agents kept in columns
+      scoringRule.updateLiquidity(stockLMSR);
+      stockLMSR.setPrice(getCostLMSR(1, true) - getCostLMSR(0, true));
+      stockLMSR.updateMarketInformation(); // read by all agents while they decide in parallel
+      for (int quote = 0; sparseActivation && quote < quotes.length; quote++) {
+         getQuote(quote);
+      }
+      collectingOrders = true;
+      if (getMailbox() != null) {
+         mailbox.open();
+      }
+      if (traders == null) {
+         World.population.decide(this);
+      } else {
+         for (int i = 0 ; i < World.numberOfLMSRAgents ; i++) {
+            traders[i].drawNoise();
+         }
+         if (World.numberOfLMSRAgents > DECISION_BLOCK) {
+            ForkJoinPool.commonPool().invoke(new Decisions(traders, getMailbox(), 0, World.numberOfLMSRAgents));
+         } else {
+            new Decisions(traders, getMailbox(), 0, World.numberOfLMSRAgents).compute();
+         }
+      }
+      if (getMailbox() != null) {
+         mailbox.close();
+      }
+      collectingOrders = clearingMethod == CLEAR_CALL_AUCTION;
+   }
+
+   private static class Decisions extends RecursiveAction { // setDemand of traders[from..to-1], splitting them in halves down to DECISION_BLOCK agents
+      private static final long serialVersionUID = 1L;
+      private final Agent[] traders;
+      private final OrderMailbox mailbox;   // receives the orders of asynchronous agents, null otherwise
+      private final int from;
+      private final int to;
+
+      Decisions(Agent[] traders, OrderMailbox mailbox, int from, int to) {
+         this.traders = traders;
+         this.mailbox = mailbox;
+         this.from = from;
+         this.to = to;
+      }
 
+      protected void compute() {
+         if (to-from <= DECISION_BLOCK) {
+            for (int i = from; i < to; i++) {
+               traders[i].setDemand();
+               if (mailbox != null) {
+                  mailbox.post(i);
+               }
+            }
+            return;
+         }
+         int middle = (from+to)/2;
+         invokeAll(new Decisions(traders, mailbox, from, middle), new Decisions(traders, mailbox, middle, to));
+      }
+   }
+
+   void openMailbox(int seed) { // orders of asynchronous agents, see World.createMailboxes
+      mailbox = new OrderMailbox(World.numberOfLMSRAgents, seed);
+   }
+
+   OrderMailbox getMailbox() { // the mailbox while agents trade asynchronously, null otherwise
+      return clearingMethod == CLEAR_ASYNC ? mailbox : null;
+   }
+
+   public OrderBook getOrderBook(boolean pos) {
+      return pos ? yesBook : noBook;
+   }
+
+   /**
+    * Matches the order of an agent against the resting limit orders of the book of its stock
+    * and returns the number of stocks filled there, negative for a sell order. Only limit
+    * orders at least as good as the agent's forecast and better than the next stock from the
+    * market maker are taken, so the agent never pays more, or receives less, than it would
+    * from the market maker.
+    */
+   public double matchOrder(Agent agent) {
+      OrderBook book = getOrderBook(agent.pos);
+      double limit = agent.pos ? agent.forecast : 1-agent.forecast;
+      double order = agent.getDemand();
+      int tick;
+      if (order > 0) {
+         tick = Math.min((int) Math.floor(limit*OrderBook.TICKS), (int) Math.ceil(getLastPriceLMSR(1, agent.pos, true)*OrderBook.TICKS) - 1);
+         return book.buy(agent, order, tick);
+      } else if (order < 0) {
+         tick = Math.max((int) Math.ceil(limit*OrderBook.TICKS), (int) Math.floor(-getLastPriceLMSR(0, agent.pos, false)*OrderBook.TICKS) + 1);
+         return -book.sell(agent, -order, tick);
+      }
+      return 0;
+   }
+
+   public boolean isCollectingOrders() {
+      return collectingOrders;
+   }
+
+   /**
+    * Clears the orders submitted in a call auction. Every order is a demand schedule, the
+    * agent buys its stocks while the marginal price of its stock is below its limit, the
+    * forecast or 1-forecast, and sells them while the price is above it, see DemandSchedule.
+    * The market maker looks for the net orders of both stocks at which the marginal prices of
+    * the scoring rule meet both schedules, bisecting the net "No" order and, for each of its
+    * values, the net "Yes" order, as the price of each stock rises with its own net order.
+    * Both are then executed as one trade costing C(q+net)-C(q). The cost is split between
+    * the two stocks symmetrically, each one charged the mean of its cost before and after
+    * the other, and every agent pays the average price of its stock, pro rata to its stocks.
+    * A stock whose orders net to zero trades at its marginal price after the auction.
+    */
+   private void clearCallAuction(Agent[] traders) {
+      double qPos = stockLMSR.getQPosLMSR();
+      double qNeg = stockLMSR.getQNegLMSR();
+      double[] fills = new double[World.numberOfLMSRAgents];
+      double[] bracket = new double[2];
+      double lo;
+      double hi;
+      double netPos;
+      double netNeg;
+      double price;
+      double cost;
+      double costPos;
+      double pricePos;
+      double priceNeg;
+
+      if (yesSchedule == null) {
+         yesSchedule = new DemandSchedule();
+         noSchedule = new DemandSchedule();
+      }
+      yesSchedule.reset();
+      noSchedule.reset();
+      for (int i = 0 ; i < World.numberOfLMSRAgents ; i++) {
+         if (traders[i].getDemand() == 0) {
+            continue;
+         }
+         if (traders[i].pos) {
+            yesSchedule.add(i, traders[i].forecast, traders[i].getDemand());
+         } else {
+            noSchedule.add(i, 1-traders[i].forecast, traders[i].getDemand());
+         }
+      }
+      yesSchedule.sort();
+      noSchedule.sort();
+
+      lo = -noSchedule.getSellStocks();
+      hi = noSchedule.getBuyStocks();
+      for (int i = 0; i < MAX_AUCTION_STEPS && hi - lo > AUCTION_TOLERANCE*Math.max(1, Math.abs(lo)); i++) {
+         netNeg = (lo+hi)/2;
+         balanceNetPos(netNeg, bracket);
+         netPos = (bracket[0]+bracket[1])/2;
+         price = scoringRule.price(stockLMSR, qPos+netPos, qNeg+netNeg, false);
+         if (netNeg < noSchedule.getLowDemand(price)) {
+            lo = netNeg;
+         } else if (netNeg > noSchedule.getHighDemand(price)) {
+            hi = netNeg;
+         } else {
+            lo = netNeg;
+            hi = netNeg;
+         }
+      }
+      netNeg = (lo+hi)/2;
+      balanceNetPos(netNeg, bracket);
+      netPos = yesSchedule.fill((bracket[0]+bracket[1])/2, scoringRule.price(stockLMSR, qPos+bracket[0], qNeg+netNeg, true), scoringRule.price(stockLMSR, qPos+bracket[1], qNeg+netNeg, true), fills);
+      netNeg = noSchedule.fill(netNeg, scoringRule.price(stockLMSR, qPos+netPos, qNeg+lo, false), scoringRule.price(stockLMSR, qPos+netPos, qNeg+hi, false), fills);
+
+      cost = scoringRule.costDifference(stockLMSR, qPos, qNeg, qPos+netPos, qNeg+netNeg);
+      costPos = (scoringRule.orderCost(stockLMSR, netPos, true) + cost - scoringRule.orderCost(stockLMSR, netNeg, false))/2;
+      pricePos = netPos == 0 ? scoringRule.price(stockLMSR, qPos+netPos, qNeg+netNeg, true) : costPos/netPos;
+      priceNeg = netNeg == 0 ? scoringRule.price(stockLMSR, qPos+netPos, qNeg+netNeg, false) : (cost-costPos)/netNeg;
+      stockLMSR.setQPosLMSR(netPos);
+      stockLMSR.setQNegLMSR(netNeg);
+      for (int i = 0 ; i < World.numberOfLMSRAgents ; i++) {
+         traders[i].executeAuctionOrder(fills[i], traders[i].pos ? pricePos : priceNeg);
+      }
+   }  // clearCallAuction
+
+   private void balanceNetPos(double netNeg, double[] bracket) { // brackets the net "Yes" order at which its marginal price meets yesSchedule, given the net "No" order
+      double qPos = stockLMSR.getQPosLMSR();
+      double qNeg = stockLMSR.getQNegLMSR();
+      double lo = -yesSchedule.getSellStocks();
+      double hi = yesSchedule.getBuyStocks();
+      double net;
+      double price;
+
+      for (int i = 0; i < MAX_AUCTION_STEPS && hi - lo > AUCTION_TOLERANCE*Math.max(1, Math.abs(lo)); i++) {
+         net = (lo+hi)/2;
+         price = scoringRule.price(stockLMSR, qPos+net, qNeg+netNeg, true);
+         if (net < yesSchedule.getLowDemand(price)) {
+            lo = net;
+         } else if (net > yesSchedule.getHighDemand(price)) {
+            hi = net;
+         } else {
+            lo = net;
+            hi = net;
+         }
+      }
+      bracket[0] = lo;
+      bracket[1] = hi;
+   }
+
+   public void adjustOutcomePrices() { // price adjustment for the n-outcome market, agents trade one after the other
+      Agent agent;
+      double priceFirst;
+      double priceSecond;
+
+      for (int i = 0 ; i < World.numberOfLMSRAgents ; i++) {
+         agent = World.Agents[i];
+         agent.setOutcomeDemand();
+         demands[i] = agent.getDemand();
+      }
+      priceFirst = getLastPriceOutcomeLMSR(0, 1, true);
+      priceSecond = getLastPriceOutcomeLMSR(1, 1, true);
+      World.outcomeStock.setPrice(priceFirst);
+      stockLMSR.setPrice(priceFirst); // displays and recorder show outcome 0 as "Yes" and outcome 1 as "No"
+      stockLMSR.setPriceNoStock(priceSecond);
+      stockLMSR.setPriceSum(priceFirst + priceSecond);
+   }  // adjustOutcomePrices
+
+   private Agent[] getAgents() {
+      if (agents == null) {
+         return World.Agents;
+      }
+      return agents;
+   }
+
+   public LMSRStock getStockLMSR() {
+      return stockLMSR;
+   }
+
+   public void adjustPatternPrices() { // price adjustment for the combinatorial market, agents trade one after the other
+      Agent agent;
+      double priceYes;
+      double priceNo;
+      Agent[] traders = getAgents();
+
+      for (int i = 0 ; i < World.numberOfLMSRAgents ; i++) {
+         agent = traders[i];
+         agent.setPatternDemand();
+         demands[i] = agent.getDemand();
+      }
+      priceYes = getLastPriceOutcomeLMSR(World.combinatorialStock.getPattern(1L, 1L), 1, true);
+      priceNo = getLastPriceOutcomeLMSR(World.combinatorialStock.getPattern(1L, 0L), 1, true);
+      World.combinatorialStock.setPrice(priceYes);
+      stockLMSR.setPrice(priceYes); // displays and recorder show whether event 0 happens as "Yes" and "No"
+      stockLMSR.setPriceNoStock(priceNo);
+      stockLMSR.setPriceSum(priceYes + priceNo);
+   }  // adjustPatternPrices
 
    public void adjustPrice() {
       adjustPricePrediction();
    }
 
    public void setSpecialistRevenue(double val) { specialistRevenue += val; }
+   public void setSpecialistRevenueUnits(long val) {
+      specialistRevenueUnits += val;
+      specialistRevenue = Ledger.toDouble(specialistRevenueUnits);
+   }
    public double getSpecialistRevenue() { return specialistRevenue; }
    public void setSpecialistPayout(double val) { specialistPayout += val; }
    public double getSpecialistPayout() { return specialistPayout; }
    public void setSpecialistLiabilities() {
-      stockLMSR = World.LMSRStocks;
-      if (stockLMSR.probability > 0.5) {
+      if (World.outcomeStock != null) { // the market maker pays for the winning outcome only
+         int winner = World.outcomeStock.getWinningOutcome();
+         specialistLiabilitiesUnits = Ledger.toUnits(World.outcomeStock.getQuantity(winner)) - Ledger.toUnits(World.outcomeStock.getInitialQuantity(winner));
+         specialistLiabilities = World.outcomeStock.getQuantity(winner) - World.outcomeStock.getInitialQuantity(winner);
+      } else if (World.combinatorialStock != null) { // the market maker pays for every pattern that holds
+         specialistLiabilitiesUnits = 0;
+         specialistLiabilities = 0;
+         for (int k = 0; k < World.combinatorialStock.getNumberOfPatterns(); k++) {
+            if (World.combinatorialStock.getPatternPays(k)) {
+               specialistLiabilitiesUnits += Ledger.toUnits(World.combinatorialStock.getPatternQuantity(k));
+               specialistLiabilities += World.combinatorialStock.getPatternQuantity(k);
+            }
+         }
+      } else if (World.isWealthAggregated()) { // the winning stocks held by all agents, the same as the outstanding ones less the initial ones
+         specialistLiabilitiesUnits = World.getWinningStockUnits();
+         specialistLiabilities = AsmModel.fixedPointLedger ? Ledger.toDouble(specialistLiabilitiesUnits) : World.getWinningStocks();
+      } else if (AsmModel.fixedPointLedger) {
+         if (stockLMSR.probability > 0.5) {
+            specialistLiabilitiesUnits = Ledger.toUnits(stockLMSR.getQPosLMSR()) - Ledger.toUnits(stockLMSR.getQPosInitial()); // Market Maker doesn't pay for initial stocks
+         } else {
+            specialistLiabilitiesUnits = Ledger.toUnits(stockLMSR.getQNegLMSR()) - Ledger.toUnits(stockLMSR.getQNegInitial()); // Market Maker doesn't pay for initial stocks
+         }
+         specialistLiabilities = Ledger.toDouble(specialistLiabilitiesUnits);
+      } else if (stockLMSR.probability > 0.5) {
          specialistLiabilities = stockLMSR.getQPosLMSR() - stockLMSR.getQPosInitial(); // Market Maker doesn't pay for initial stocks
       } else {
          specialistLiabilities = stockLMSR.getQNegLMSR() - stockLMSR.getQNegInitial(); // Market Maker doesn't pay for initial stocks
       }
    }
    public double getSpecialistLiabilities() { return specialistLiabilities; }
-   public double getSpecialistProfit() { return getSpecialistRevenue() - getSpecialistLiabilities(); }
+   public double getSpecialistProfit() {
+      if (AsmModel.fixedPointLedger) {
+         return Ledger.toDouble(specialistRevenueUnits - specialistLiabilitiesUnits);
+      }
+      return getSpecialistRevenue() - getSpecialistLiabilities();
+   }
    public void setResetSpecialist() {
        specialistLiabilities = 0;
        specialistRevenue = 0;
+       specialistLiabilitiesUnits = 0;
+       specialistRevenueUnits = 0;
    }
 }
@@ -0,0 +1,37 @@
+/*
+ * The LMSR-ASM (Logarithmic Market Scoring Rule Artificial Stock Market)
+ * Copyright (C) Athos Carvalho 2021 under a under a Creative Commons Attribution-NonCommercial-ShareAlike 4.0 International License.
+ * https://creativecommons.org/licenses/by-nc-sa/4.0/
+ *
+ * Based on the NESFI-ASM 1.0 (Norman Ehrentreich's Santa Fe Institute Artificial Stock Market)
+ * Copyright (C) Norman Ehrentreich 2002 & The Santa Fe Institute 1995
+ *
+ * No warranty implied;
+ *
+ * Implementation of the Agent Class
+ */
+
+
+package ASMModel;
+
+/**
+ * How an agent forms its forecast of an event and sizes its orders. Agent.setDemand and
+ * AgentPopulation run the same trading rule for every strategy: buy the side priced below
+ * the forecast, or first sell the holdings of the other side. A strategy only decides the
+ * forecast and whether orders are capped by the CARA demand and the budget. Each agent
+ * carries its strategy, so a population can mix them, see Agent.getCohorts.
+ */
+interface TradingStrategy {
+
+   /** Probability that the event happens, as seen by an agent with the given noise. */
+   double getForecast(LMSRStock event, double offset);
+
+   /**
+    * Forecasts of the agents listed in cohort, from their noise in offsets into forecasts.
+    * Called once per cohort, so the loop only ever sees one strategy.
+    */
+   void getForecasts(LMSRStock event, double[] offsets, double[] forecasts, int[] cohort);
+
+   /** Whether orders are capped by the CARA demand and the budget, or only by the forecast. */
+   boolean isRiskAverse();
+}
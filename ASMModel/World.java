@@ -34,7 +34,13 @@ class World {
    public static int period = 0 ;
 
    public static ASMModel.Agent[] Agents ;
+   public static AgentPopulation population;        // agents kept in columns, then Agents is null
+   public static boolean columnarAgents = false;    // keeps the agents in columns where AgentPopulation supports the settings
    public static LMSRStock LMSRStocks;
+   public static MultiOutcomeStock outcomeStock;   // n-outcome market, null when the binary market is traded
+   public static CombinatorialStock combinatorialStock; // combinatorial market, null when the binary market is traded
+   public static Market[] markets;                 // all markets, the first being the one of LMSRStocks, null when it is the only one
+   public static EventEngine eventEngine;          // clock of the agents trading in continuous time, null when they trade once per period
 
    public static int numberOfLMSRAgents = 25;
    public static int numberOfAgents = numberOfLMSRAgents;
@@ -42,22 +48,183 @@ class World {
 
    public static int numberOfPeriods = 200 ;
    private static double totalWealth = 0 ;
+   private static double totalCash = 0;            // cash and stocks of all agents, kept up to date by every trade, see addHoldings
+   private static double totalPosStocks = 0;
+   private static double totalNegStocks = 0;
+   private static long totalCashUnits = 0;         // the same in micro-units of the fixed-point ledger
+   private static long totalPosStockUnits = 0;
+   private static long totalNegStockUnits = 0;
+   private static Agent[] shortOfCash;             // agents whose cash fell below Agent.MINCASH in this period
+   private static int numberShortOfCash = 0;
+   static boolean settled = false;                 // set when the agents are paid out, their wealth is their payout from then on
 
    public World() { // constructor
    }  // constructor
 
    public static void createAgents() {
+      settled = false;
+      numberShortOfCash = 0;
+      if (columnarAgents && AgentPopulation.isSupported()) {
+         Agents = null;
+         shortOfCash = null;
+         population = new AgentPopulation(numberOfLMSRAgents);
+         sumHoldings();
+         baseWealth = population.cash[0];
+         System.gc();
+         if (AsmModel.recordData && World.period>0)
+            AsmModel.recorder.record();
+         return;
+      }
+      population = null;
       Agents = new Agent[numberOfLMSRAgents];
+      int[][] cohorts = Agent.getCohorts(numberOfLMSRAgents);
       for(int i = 0; i< numberOfLMSRAgents; i++) {
          Agent newLMSRAgent = new LMSRAgent(0);
          Agents[i] = newLMSRAgent;
       }
+      for (int t = 0; t < cohorts.length; t++) { // the types alternate in agent order
+         for (int k = 0; k < cohorts[t].length; k++) {
+            Agents[cohorts[t][k]].setStrategy(Agent.getStrategy(t));
+         }
+      }
+      shortOfCash = new Agent[numberOfLMSRAgents];
+      sumHoldings();
       baseWealth = Agents[0].cash; // assume that all agents have same endowments; then, baseWealth is the wealth due to inactivity, i.e., an agents does not trade and holds his initial endowment of one unit of stock.
       System.gc();
       if (AsmModel.recordData && World.period>0)
          AsmModel.recorder.record();
    }	// createAgents()
 
+   public static void createMarkets(int seed) { // called after createAgents, the further markets draw their noise from seed+1, seed+2, ...
+      if (Market.numberOfMarkets < 2 || outcomeStock != null || combinatorialStock != null) {
+         markets = null;
+         return;
+      }
+      markets = new Market[Market.numberOfMarkets];
+      markets[0] = new Market();
+      for (int k = 1; k < Market.numberOfMarkets; k++) {
+         markets[k] = new Market(seed+k);
+      }
+   }	// createMarkets()
+
+   public static void createEventEngine(int seed) { // called after createMarkets, the agents trade in continuous time if clearingMethod asks for it
+      if (Specialist.clearingMethod != Specialist.CLEAR_CONTINUOUS || !EventEngine.isSupported()) {
+         eventEngine = null;
+         return;
+      }
+      eventEngine = new EventEngine(numberOfLMSRAgents, seed);
+   }	// createEventEngine()
+
+   public static void createMailboxes(int seed) { // called after createMarkets, the mailboxes draw their latencies from seed-2, seed-3, ...
+      if (Specialist.clearingMethod != Specialist.CLEAR_ASYNC) {
+         return;
+      }
+      AsmModel.specialist.openMailbox(seed-2);
+      for (int k = 1; markets != null && k < markets.length; k++) {
+         markets[k].getSpecialist().openMailbox(seed-2-k);
+      }
+   }	// createMailboxes()
+
+   /**
+    * The wealth of all agents in the binary market is the total of their cash plus the prices
+    * times the totals of their "Yes" and "No" stocks. Each trade adds its changes to these
+    * totals, so a period values all agents at once instead of one after the other, and an
+    * agent's own wealth is only computed when it is asked for. The totals of the fixed-point
+    * ledger are exact, those in floating point may differ from the sum over the agents in the
+    * last digits. The payout at the last period is settled the same way, each winning stock
+    * paying one unit of cash, as agents never hold fewer than zero stocks. Further markets
+    * and the n-outcome and combinatorial markets still value every agent, see
+    * isWealthAggregated.
+    */
+   static boolean isWealthAggregated() {
+      return outcomeStock == null && combinatorialStock == null && markets == null;
+   }
+
+   private static void sumHoldings() { // totals of new agents, kept up to date by their trades from here on
+      totalCash = 0;
+      totalPosStocks = 0;
+      totalNegStocks = 0;
+      totalCashUnits = 0;
+      totalPosStockUnits = 0;
+      totalNegStockUnits = 0;
+      for (int i = 0; i < numberOfLMSRAgents; i++) {
+         if (population != null) {
+            totalCash += population.cash[i];
+            totalPosStocks += population.numberOfPosStocks[i];
+            totalNegStocks += population.numberOfNegStocks[i];
+            totalCashUnits += Ledger.toUnits(population.cash[i]);
+            totalPosStockUnits += Ledger.toUnits(population.numberOfPosStocks[i]);
+            totalNegStockUnits += Ledger.toUnits(population.numberOfNegStocks[i]);
+         } else {
+            totalCash += Agents[i].cash;
+            totalPosStocks += Agents[i].numberOfPosStocks;
+            totalNegStocks += Agents[i].numberOfNegStocks;
+            totalCashUnits += Agents[i].cashUnits;
+            totalPosStockUnits += Agents[i].posStockUnits;
+            totalNegStockUnits += Agents[i].negStockUnits;
+         }
+      }
+   }
+
+   static void addHoldings(double cash, double posStocks, double negStocks) { // changes of an agent's holdings
+      if (!isWealthAggregated()) { // unused, and further markets trade and pay their positions in parallel
+         return;
+      }
+      totalCash += cash;
+      totalPosStocks += posStocks;
+      totalNegStocks += negStocks;
+   }
+
+   static void addHoldingUnits(long cashUnits, long posStockUnits, long negStockUnits) {
+      if (!isWealthAggregated()) {
+         return;
+      }
+      totalCashUnits += cashUnits;
+      totalPosStockUnits += posStockUnits;
+      totalNegStockUnits += negStockUnits;
+   }
+
+   static void addShortOfCash(Agent agent) { // each agent is listed once per period, see Agent.checkMinimumCash
+      shortOfCash[numberShortOfCash++] = agent;
+   }
+
+   static void setMinimumCash() { // raises the cash of the agents that fell below Agent.MINCASH in this period
+      if (population != null) {
+         population.setMinimumCash();
+         return;
+      }
+      for (int k = 0; k < numberShortOfCash; k++) {
+         shortOfCash[k].setMinimumCash();
+         shortOfCash[k] = null;
+      }
+      numberShortOfCash = 0;
+   }
+
+   static double getAggregateWealth() { // at the current prices, or the payout once settled
+      if (AsmModel.fixedPointLedger) {
+         return Ledger.toDouble(getAggregateWealthUnits());
+      }
+      if (settled) {
+         return totalCash + getWinningStocks();
+      }
+      return totalCash + totalPosStocks*LMSRStocks.getPrice() + totalNegStocks*LMSRStocks.getPriceNoStock();
+   }
+
+   static long getAggregateWealthUnits() {
+      if (settled) {
+         return totalCashUnits + getWinningStockUnits();
+      }
+      return totalCashUnits + Ledger.multiply(totalPosStockUnits, Ledger.toUnits(LMSRStocks.getPrice())) + Ledger.multiply(totalNegStockUnits, Ledger.toUnits(LMSRStocks.getPriceNoStock()));
+   }
+
+   static double getWinningStocks() { // stocks held by all agents that pay if the market resolved at the current probability
+      return LMSRStocks.probability > 0.5 ? totalPosStocks : totalNegStocks;
+   }
+
+   static long getWinningStockUnits() {
+      return LMSRStocks.probability > 0.5 ? totalPosStockUnits : totalNegStockUnits;
+   }
+
    protected static double getTotalWealth() {
       return totalWealth;
    }
@@ -73,14 +240,31 @@ class World {
    }  // finalize
 
    public static double getAverageWealth() {
-      int totalWealth = 0;
+      double totalWealth = 0;
+      if (isWealthAggregated()) {
+         return getAggregateWealth()/World.numberOfAgents;
+      }
         for (int i = 0 ; i < World.numberOfAgents ; i++ ) {
-          totalWealth += Agents[i].getWealth() ;
+          totalWealth += getAgentWealth(i) ;
         }
       // System.out.println("Average Wealth of agents in the economy :"+totalWealth/World.numberOfAgents );
       return totalWealth/World.numberOfAgents;
    }  // getAverageWealth
 
+   public static Agent getAgent(int i) { // the agent, or a view of it if the agents are kept in columns
+      if (population != null) {
+         return population.getView(i);
+      }
+      return Agents[i];
+   }
+
+   static double getAgentWealth(int i) {
+      if (population != null) {
+         return population.getWealth(i);
+      }
+      return Agents[i].getWealth();
+   }
+
    protected static double getBaseWealth() {
       return baseWealth;
    }